@@ -0,0 +1,333 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Micro benchmarks of the core board operations, run headless:
+ *
+ *      java -Djava.awt.headless=true -cp out Benchmarks                         - print results
+ *      java -Djava.awt.headless=true -cp out Benchmarks --save bench/baseline.tsv
+ *      java -Djava.awt.headless=true -cp out Benchmarks --compare bench/baseline.tsv
+ *
+ * Every benchmark is warmed up, then measured in several rounds; the result is the best
+ * round's throughput and the bytes allocated per operation on the benchmark thread.
+ *
+ * --save and --compare run the benchmarks in FORKS fresh JVMs, as the JIT compiles a little
+ * differently in each, and keep the mean and standard deviation of the forks:
+ *
+ *      name        ops/s       +- ops/s        B/op
+ *
+ * --compare exits with status 1 if an operation allocates more than before, or got slower by more than
+ * ERROR_BARS standard deviations of the baseline and the current run together and by more than
+ * MIN_TOLERANCE, so each benchmark is held to the noise it showed. Throughput only compares on
+ * the machine and JVM that recorded the baseline: regenerate it with --save there first.
+ */
+public class Benchmarks {
+    private static final long WARMUP_NANOS = 200_000_000L;
+    private static final long ROUND_NANOS = 200_000_000L;
+    private static final int ROUNDS = 5;
+    private static final int FORKS = 3;
+    private static final double ERROR_BARS = 3;
+    private static final double MIN_TOLERANCE = 0.05; // below this a slowdown is not reported, however steady
+
+    private static volatile long sink; // keeps results alive so the JIT cannot drop the work
+
+    private interface Operation {
+        long run(int i);
+    }
+
+    private static class Result {
+        final double opsPerSecond;
+        final double opsError; // standard deviation over the forks
+        final double bytesPerOp;
+
+        Result(double opsPerSecond, double opsError, double bytesPerOp) {
+            this.opsPerSecond = opsPerSecond;
+            this.opsError = opsError;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    private final Map<String, Result> results = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Benchmarks benchmarks = new Benchmarks();
+
+        if (args.length == 2 && args[0].equals("--fork")) { // one fork of --save / --compare
+            benchmarks.runAll();
+            benchmarks.save(new File(args[1]));
+        } else if (args.length == 2 && args[0].equals("--save")) {
+            benchmarks.runForks();
+            benchmarks.save(new File(args[1]));
+        } else if (args.length == 2 && args[0].equals("--compare")) {
+            benchmarks.runForks();
+            if (!benchmarks.compare(new File(args[1]))) System.exit(1);
+        } else {
+            benchmarks.runAll();
+        }
+    }
+
+    // runs every benchmark in FORKS new JVMs on this class path, results are the mean over the forks
+    private void runForks() throws IOException, InterruptedException {
+        List<Map<String, Result>> forks = new ArrayList<>();
+
+        for (int fork = 1; fork <= FORKS; fork++) {
+            System.out.println("# fork " + fork + " of " + FORKS);
+            File file = File.createTempFile("benchmarks", ".tsv");
+            try {
+                Process process = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                        "-Djava.awt.headless=true", "-cp", System.getProperty("java.class.path"), Benchmarks.class.getName(), "--fork", file.getPath())
+                        .inheritIO().start();
+                if (process.waitFor() != 0) throw new IOException("Benchmark fork " + fork + " failed with status " + process.exitValue());
+                forks.add(read(file));
+            } finally {
+                file.delete();
+            }
+        }
+
+        for (String name : forks.get(0).keySet()) {
+            double sum = 0, sumOfSquares = 0, bytes = 0;
+            for (Map<String, Result> fork : forks) {
+                Result result = fork.get(name);
+                sum += result.opsPerSecond;
+                sumOfSquares += result.opsPerSecond * result.opsPerSecond;
+                bytes = Math.max(bytes, result.bytesPerOp); // the worst fork, a TLAB refill more or less is noise too
+            }
+            double mean = sum / FORKS;
+            double error = Math.sqrt(Math.max(0, (sumOfSquares - sum * mean) / (FORKS - 1)));
+            results.put(name, new Result(mean, error, bytes));
+        }
+
+        System.out.println("# mean of " + FORKS + " forks");
+        for (Map.Entry<String, Result> entry : results.entrySet()) print(entry.getKey(), entry.getValue());
+    }
+
+    private void runAll() {
+        final BitBoard stack = sampleStack();
+
+        // collision of every tetromino, rotation and direction against a partially filled board
+        for (int tetromino = 0; tetromino < Tetromino.COUNT; tetromino++) {
+            for (int rotation = 0; rotation < Tetromino.ROTATIONS; rotation++) {
+                final int t = tetromino, r = rotation;
+                bench("collides " + Tetromino.NAMES.charAt(t) + r + " down", i -> stack.collides(t, r, 4, 12 + (i & 3) + 1) ? 1 : 0);
+                bench("collides " + Tetromino.NAMES.charAt(t) + r + " left", i -> stack.collides(t, r, 4 - 1, 12 + (i & 3)) ? 1 : 0);
+                bench("collides " + Tetromino.NAMES.charAt(t) + r + " right", i -> stack.collides(t, r, 4 + 1, 12 + (i & 3)) ? 1 : 0);
+            }
+        }
+
+        final BitBoard canvas = new BitBoard(10, 20);
+        bench("fill", i -> {
+            canvas.fill(i % Tetromino.COUNT, i & 3, 4, 10, (byte) 1);
+            canvas.fill(i % Tetromino.COUNT, i & 3, 4, 10, BitBoard.EMPTY);
+            return canvas.isOccupied(4, 10) ? 1 : 0;
+        });
+
+        // the board is restored from a template before each clear, so the restore is measured too
+        final int[] clearedRows = new int[20];
+        for (int lines = 0; lines <= 4; lines++) {
+            final BitBoard template = stackWithFullRows(lines);
+            final BitBoard board = new BitBoard(10, 20);
+            bench("clearFullRows " + lines, i -> {
+                board.copyFrom(template);
+                return board.clearFullRows(clearedRows);
+            });
+        }
+
+        final BitBoard empty = new BitBoard(10, 20);
+        bench("isEmpty empty", i -> empty.isEmpty() ? 1 : 0);
+        bench("isEmpty filled", i -> stack.isEmpty() ? 1 : 0);
+
+        // one op = every placement of a tetromino over the sample stack
+        final PlacementSearch search = new PlacementSearch(10, 20);
+        final long evaluationsBefore = search.getEvaluations();
+        final long searchStart = System.nanoTime();
+        bench("placement search", i -> search.search(stack, i % Tetromino.COUNT, 0, 4, 0) ? 1 : 0);
+        System.out.printf(Locale.ROOT, "%-24s %16.0f evaluations/s%n", "", (search.getEvaluations() - evaluationsBefore) * 1e9 / (System.nanoTime() - searchStart));
+
+        // the same searches with a TranspositionCache: the seven positions repeat, so from the second op on they hit
+        final PlacementSearch cachedSearch = new PlacementSearch(10, 20, new TranspositionCache(1 << 12));
+        bench("placement search cached", i -> cachedSearch.search(stack, i % Tetromino.COUNT, 0, 4, 0) ? 1 : 0);
+        TranspositionCache cache = cachedSearch.getCache();
+        System.out.printf(Locale.ROOT, "%-24s %16.3f hit rate, %d evictions%n", "", (double) cache.getHits() / (cache.getHits() + cache.getMisses()), cache.getEvictions());
+
+        // a game 200 pieces in, written to and read back from a direct buffer
+        final GameEngine game = new GameEngine(10, 20, 1, Randomizer.BAG);
+        final BotPolicy bot = new BotPolicy(10, 20);
+        while (!game.isOver() && game.getPiecesPlaced() < 200) {
+            Input input;
+            while ((input = bot.next(game)) != null) game.apply(input);
+            game.tick();
+        }
+        final ByteBuffer snapshot = ByteBuffer.allocateDirect(GameEngine.snapshotBytes(10, 20));
+        final GameEngine restored = new GameEngine(10, 20, 1, Randomizer.BAG);
+        bench("snapshot save", i -> {
+            snapshot.clear();
+            game.save(snapshot);
+            return snapshot.position();
+        });
+        bench("snapshot restore", i -> {
+            snapshot.clear();
+            restored.restore(snapshot);
+            return restored.getX();
+        });
+
+        final Board view = new Board(null);
+        view.setSize(view.getPreferredSize());
+        final BufferedImage image = new BufferedImage(view.getWidth(), view.getHeight(), BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = image.createGraphics();
+        bench("paintComponent", i -> {
+            view.paintComponent(graphics);
+            return image.getRGB(0, 0);
+        });
+
+        // a moved tetromino: the 4x3 tiles around it, as repainted from the engine's dirty region
+        graphics.setClip(3 * 30, 9 * 30, 4 * 30 + 1, 3 * 30 + 1);
+        bench("paintComponent dirty", i -> {
+            view.paintComponent(graphics);
+            return image.getRGB(0, 0);
+        });
+        graphics.dispose();
+    }
+
+    private void bench(String name, Operation operation) {
+        long end = System.nanoTime() + WARMUP_NANOS;
+        for (int i = 0; System.nanoTime() < end; i++) sink += operation.run(i);
+
+        double bestOpsPerSecond = 0;
+        long totalOps = 0, totalBytes = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long ops = 0;
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long now = start;
+
+            // check the clock every 1024 operations only, nanoTime would dominate the fast ones
+            while (now - start < ROUND_NANOS) {
+                for (int i = 0; i < 1024; i++) sink += operation.run((int) ops + i);
+                ops += 1024;
+                now = System.nanoTime();
+            }
+
+            totalBytes += allocatedBytes() - bytesBefore;
+            totalOps += ops;
+            bestOpsPerSecond = Math.max(bestOpsPerSecond, ops * 1e9 / (now - start));
+        }
+
+        Result result = new Result(bestOpsPerSecond, 0, (double) totalBytes / totalOps);
+        results.put(name, result);
+        print(name, result);
+    }
+
+    private static void print(String name, Result result) {
+        System.out.printf(Locale.ROOT, "%-24s %16.0f ops/s +- %5.1f%% %10.3f B/op%n", name, result.opsPerSecond, 100 * result.opsError / result.opsPerSecond, result.bytesPerOp);
+    }
+
+    // allocation of the current thread, the same counter the JMH gc profiler reads
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // the JVM and machine the numbers were measured on, the first line of a results file
+    private static String machine() {
+        return "# " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors() + " cpus";
+    }
+
+    private void save(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.println(machine());
+            for (Map.Entry<String, Result> entry : results.entrySet()) {
+                Result result = entry.getValue();
+                writer.printf(Locale.ROOT, "%s\t%.0f\t%.0f\t%.3f%n", entry.getKey(), result.opsPerSecond, result.opsError, result.bytesPerOp);
+            }
+        }
+    }
+
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+
+                String[] columns = line.split("\t");
+                if (columns.length != 4) throw new IOException(file + ": expected name, ops/s, error and B/op, not " + line);
+                results.put(columns[0], new Result(Double.parseDouble(columns[1]), Double.parseDouble(columns[2]), Double.parseDouble(columns[3])));
+            }
+        }
+
+        return results;
+    }
+
+    private boolean compare(File file) throws IOException {
+        boolean passed = true;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String header = reader.readLine();
+            if (!machine().equals(header)) {
+                System.out.println("WARNING the baseline was recorded on " + header + ", this is " + machine() + ": regenerate it here with --save");
+            }
+        }
+
+        for (Map.Entry<String, Result> entry : read(file).entrySet()) {
+            Result baseline = entry.getValue();
+            Result current = results.get(entry.getKey());
+            if (current == null) continue;
+
+            double noise = ERROR_BARS * Math.sqrt(baseline.opsError * baseline.opsError + current.opsError * current.opsError);
+            double slowdown = baseline.opsPerSecond - current.opsPerSecond;
+            if (slowdown > noise && slowdown > baseline.opsPerSecond * MIN_TOLERANCE) {
+                System.out.printf(Locale.ROOT, "REGRESSION %s: %.0f +- %.0f ops/s, baseline %.0f +- %.0f%n",
+                        entry.getKey(), current.opsPerSecond, current.opsError, baseline.opsPerSecond, baseline.opsError);
+                passed = false;
+            }
+
+            if (current.bytesPerOp > baseline.bytesPerOp * (1 + MIN_TOLERANCE) + 1) {
+                System.out.printf(Locale.ROOT, "REGRESSION %s: %.3f B/op, baseline %.3f%n", entry.getKey(), current.bytesPerOp, baseline.bytesPerOp);
+                passed = false;
+            }
+        }
+
+        return passed;
+    }
+
+    /**
+     * Bottom of a typical mid game board:
+     *
+     *      . . . . . . . . . .   row 12
+     *      . . . # # . . . . .
+     *      # # . # # # . . # #
+     *      # # # # # # # . # #   row 15 .. 19 alike
+     */
+    private static BitBoard sampleStack() {
+        BitBoard board = new BitBoard(10, 20);
+        board.set(3, 13, (byte) 1);
+        board.set(4, 13, (byte) 1);
+
+        for (int col : new int[]{0, 1, 3, 4, 5, 8, 9}) board.set(col, 14, (byte) 2);
+
+        for (int row = 15; row < 20; row++) {
+            for (int col = 0; col < 10; col++) {
+                if (col != 7) board.set(col, row, (byte) 3);
+            }
+        }
+
+        return board;
+    }
+
+    private static BitBoard stackWithFullRows(int lines) {
+        BitBoard board = sampleStack();
+
+        for (int row = 19; row > 19 - lines; row--) board.set(7, row, (byte) 4);
+
+        return board;
+    }
+}
@@ -0,0 +1,157 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Randomized check of TranspositionCache, alone and under PlacementSearch:
+ *
+ *      java -cp out CacheCheck [seed]
+ *
+ *      table       random puts and gets over a key space larger than the cache: a hit returns
+ *                  the value last put for its key, a put is found right after, and the hits,
+ *                  misses and evictions add up
+ *      search      the positions of bot games are searched with and without a cache, a small one
+ *                  that evicts all the time and a large one, twice each so the second search
+ *                  hits; the best placement and score must be the same
+ *
+ * Then times the searches of the same positions without and with the cache. Exits with status 1
+ * on any mismatch.
+ */
+public class CacheCheck {
+    private static final int OPERATIONS = 1_000_000;
+    private static final int GAMES = 20;
+    private static final int TIMED_ROUNDS = 20;
+
+    private static long mismatches = 0;
+
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(args.length > 0 ? Long.parseLong(args[0]) : 17);
+
+        checkTable(random);
+        long positions = 0;
+        for (int game = 0; game < GAMES; game++) positions += checkSearch(game, random);
+        System.out.printf("%d positions searched, %d mismatches%n", positions, mismatches);
+
+        timeSearch();
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static void checkTable(SplittableRandom random) {
+        TranspositionCache cache = new TranspositionCache(256);
+        Map<Long, Double> model = new HashMap<>(); // the value last put for every key
+        long gets = 0, puts = 0, hits = 0;
+
+        for (int operation = 0; operation < OPERATIONS; operation++) {
+            long key = random.nextInt(1024) - 1; // 0 and -1 too
+            if (random.nextBoolean()) {
+                double value = random.nextDouble();
+                cache.put(key, value);
+                model.put(key, value);
+                puts++;
+                if (cache.get(key) != value) mismatch("put(" + key + ") not found right after");
+                gets++;
+                hits++;
+            } else {
+                double value = cache.get(key);
+                gets++;
+                if (Double.isNaN(value)) continue;
+
+                hits++;
+                if (!Double.valueOf(value).equals(model.get(key))) mismatch("get(" + key + ") is " + value + ", " + model.get(key) + " was put");
+            }
+        }
+
+        if (cache.getHits() != hits || cache.getHits() + cache.getMisses() != gets) {
+            mismatch(gets + " gets with " + hits + " hits counted as " + cache.getHits() + " hits and " + cache.getMisses() + " misses");
+        }
+        if (cache.getEvictions() == 0 || cache.getEvictions() > puts) mismatch(cache.getEvictions() + " evictions in " + puts + " puts");
+        System.out.printf("%d cache operations, %.3f hit rate, %d evictions%n", OPERATIONS, (double) hits / gets, cache.getEvictions());
+    }
+
+    // every spawn of a bot game, searched without a cache and with two; returns the positions checked
+    private static int checkSearch(int game, SplittableRandom random) {
+        int width = game % 3 == 0 ? 4 + random.nextInt(70) : 10, height = game % 3 == 0 ? 8 + random.nextInt(30) : 20;
+        GameEngine engine = new GameEngine(width, height, game, Randomizer.BAG);
+        BotPolicy bot = new BotPolicy(width, height);
+        PlacementSearch plain = new PlacementSearch(width, height);
+        PlacementSearch[] cached = {new PlacementSearch(width, height, new TranspositionCache(16)), new PlacementSearch(width, height, new TranspositionCache(1 << 16))};
+
+        int positions = 0;
+        long piece = -1;
+        while (!engine.isOver() && positions < 2000) {
+            if (engine.getPiecesPlaced() != piece) { // a new spawn
+                piece = engine.getPiecesPlaced();
+                positions++;
+                boolean found = plain.search(engine);
+                for (PlacementSearch search : cached) {
+                    for (int pass = 0; pass < 2; pass++) {
+                        if (search.search(engine) != found || (found && !isSame(plain, search))) {
+                            mismatch("game " + game + " piece " + piece + " pass " + pass + ": " + plain.getBestScore() + " at " + plain.getBestX()
+                                    + " without a cache of " + search.getCache().getCapacity() + ", " + search.getBestScore() + " at " + search.getBestX() + " with it");
+                        }
+                    }
+                }
+            }
+
+            Input input;
+            while ((input = bot.next(engine)) != null) engine.apply(input);
+            engine.tick();
+        }
+
+        TranspositionCache large = cached[1].getCache(); // every placement of the second pass is in it
+        if (large.getHits() < large.getMisses()) mismatch("game " + game + ": " + large.getHits() + " hits and " + large.getMisses() + " misses searching every position twice");
+        return positions;
+    }
+
+    private static boolean isSame(PlacementSearch a, PlacementSearch b) {
+        return a.getBestScore() == b.getBestScore() && a.getBestRotation() == b.getBestRotation() && a.getBestX() == b.getBestX();
+    }
+
+    // the spawns of one game, searched over and over: a cache that holds them all hits from the second round on
+    private static void timeSearch() {
+        GameEngine engine = new GameEngine(10, 20, 3, Randomizer.BAG);
+        BotPolicy bot = new BotPolicy(10, 20);
+        List<GameEngine> positions = new ArrayList<>();
+        long piece = -1;
+        while (!engine.isOver() && positions.size() < 500) {
+            if (engine.getPiecesPlaced() != piece) {
+                piece = engine.getPiecesPlaced();
+                positions.add(copy(engine));
+            }
+            Input input;
+            while ((input = bot.next(engine)) != null) engine.apply(input);
+            engine.tick();
+        }
+
+        PlacementSearch plain = new PlacementSearch(10, 20), cached = new PlacementSearch(10, 20, new TranspositionCache(1 << 16));
+        for (int round = 0; round < 5; round++) {
+            System.out.printf("%d searches: %.2f us without a cache, %.2f us with one%n",
+                    positions.size() * TIMED_ROUNDS, searchMicros(plain, positions), searchMicros(cached, positions));
+        }
+        TranspositionCache cache = cached.getCache();
+        System.out.printf("%.3f hit rate, %d evictions%n", (double) cache.getHits() / (cache.getHits() + cache.getMisses()), cache.getEvictions());
+    }
+
+    private static double searchMicros(PlacementSearch search, List<GameEngine> positions) {
+        long start = System.nanoTime();
+        for (int round = 0; round < TIMED_ROUNDS; round++) {
+            for (GameEngine position : positions) search.search(position);
+        }
+        return (System.nanoTime() - start) / 1000.0 / (positions.size() * TIMED_ROUNDS);
+    }
+
+    private static GameEngine copy(GameEngine engine) {
+        ByteBuffer snapshot = ByteBuffer.allocate(GameEngine.snapshotBytes(engine.getWidth(), engine.getHeight()));
+        engine.save(snapshot);
+        snapshot.flip();
+        return GameEngine.load(snapshot);
+    }
+
+    private static void mismatch(String what) {
+        mismatches++;
+        if (mismatches <= 10) System.out.println("MISMATCH " + what);
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.SplittableRandom;
+
+/**
+ * Randomized check of BitBoard's column skyline and dropDistance() against brute force:
+ *
+ *      java -cp out DropCheck [seed]
+ *
+ * Builds random boards of random sizes with overhangs, erased tiles, cleared rows and copies,
+ * then compares every column top with a scan of the column and the drop distance of random
+ * tetromino poses with a collides() test row by row. Exits with status 1 on any mismatch.
+ */
+public class DropCheck {
+    private static final int BOARDS = 2000;
+    private static final int POSES = 50; // per board, the ones that collide where they are are skipped
+
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(args.length > 0 ? Long.parseLong(args[0]) : 3);
+        long drops = 0, mismatches = 0;
+
+        for (int trial = 0; trial < BOARDS; trial++) {
+            BitBoard board = randomBoard(random);
+            int width = board.getWidth(), height = board.getHeight();
+
+            for (int col = 0; col < width; col++) {
+                int top = height;
+                for (int row = height - 1; row >= 0; row--) {
+                    if (board.isOccupied(col, row)) top = row;
+                }
+                if (top != board.getColumnTop(col)) {
+                    System.out.printf("MISMATCH %d x %d board, column %d: top %d, skyline %d%n", width, height, col, top, board.getColumnTop(col));
+                    mismatches++;
+                }
+            }
+
+            for (int pose = 0; pose < POSES; pose++) {
+                int tetromino = random.nextInt(Tetromino.COUNT), rotation = random.nextInt(Tetromino.ROTATIONS);
+                int x = 1 + random.nextInt(width - 3), y = -1 + random.nextInt(height / 2);
+                if (board.collides(tetromino, rotation, x, y)) continue;
+
+                int landing = y;
+                while (!board.collides(tetromino, rotation, x, landing + 1)) landing++;
+                drops++;
+                if (landing - y != board.dropDistance(tetromino, rotation, x, y)) {
+                    System.out.printf("MISMATCH %d x %d board, %c%d at (%d, %d): drop %d, dropDistance %d%n", width, height,
+                            Tetromino.NAMES.charAt(tetromino), rotation, x, y, landing - y, board.dropDistance(tetromino, rotation, x, y));
+                    mismatches++;
+                }
+            }
+        }
+
+        System.out.printf("%d boards, %d drops, %d mismatches%n", BOARDS, drops, mismatches);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    // a stack with overhangs in the lower two thirds, holes punched in it, some rows cleared, maybe copied
+    private static BitBoard randomBoard(SplittableRandom random) {
+        int width = 4 + random.nextInt(70), height = 4 + random.nextInt(40);
+        BitBoard board = new BitBoard(width, height);
+
+        for (int i = 0; i < width * height / 2; i++) {
+            board.set(random.nextInt(width), height / 3 + random.nextInt(height - height / 3), (byte) 1);
+        }
+        for (int i = 0; i < width * height / 8; i++) {
+            board.set(random.nextInt(width), random.nextInt(height), BitBoard.EMPTY); // leaves stale column tops
+        }
+        for (int row = height - 1; row > height - 4; row--) {
+            if (!random.nextBoolean()) continue;
+            for (int x = 0; x < width; x++) board.set(x, row, (byte) 2);
+        }
+        board.clearFullRows(new int[height], height - 4, height - 1);
+
+        if (random.nextInt(4) == 0) {
+            BitBoard copy = new BitBoard(width, height);
+            copy.copyRowsFrom(board, 0, height - 1);
+            return copy;
+        }
+        return board;
+    }
+}
@@ -0,0 +1,141 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Randomized check of GameEngine.rewind() against snapshots saved on the way:
+ *
+ *      java -cp out RewindCheck [seed]
+ *
+ *      rewind      games of different sizes and gravity, with stray inputs and garbage, are rewound
+ *                  by random numbers of ticks; each rewound game must save to the same bytes as the
+ *                  snapshot of that tick, and have the same board bookkeeping as a load() of it
+ *      lockstep    the loaded copy then plays on next to the rewound game, so the generators must
+ *                  deal the same pieces after a rewind as before it
+ *
+ * Then times rewinds of 10,000 ticks as the game grows. Exits with status 1 on any mismatch.
+ */
+public class RewindCheck {
+    private static final int GAMES = 12;
+    private static final int TICKS = 100_000; // per game, or until it is lost
+    private static final int MAX_REWIND = 3000;
+    private static final int SNAPSHOTS = 4 * MAX_REWIND; // a rewind seldom reaches a tick whose slot a later one took
+    private static final int LOCKSTEP_TICKS = 300;
+    private static final int TIMED_TICKS = 10_000;
+
+    private static long mismatches = 0;
+
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(args.length > 0 ? Long.parseLong(args[0]) : 7);
+
+        long rewinds = 0;
+        for (int game = 0; game < GAMES; game++) rewinds += checkGame(game, random);
+        System.out.printf("%d games, %d rewinds, %d mismatches%n", GAMES, rewinds, mismatches);
+
+        timeRewind();
+        if (mismatches > 0) System.exit(1);
+    }
+
+    // plays a game with rewinds now and then; returns the rewinds checked
+    private static int checkGame(int game, SplittableRandom random) {
+        int width = game % 3 == 0 ? 70 : 10, height = game % 3 == 0 ? 40 : 20;
+        GameEngine engine = new GameEngine(width, height, game, game % 2 == 0 ? Randomizer.BAG : Randomizer.UNIFORM);
+        if (game % 4 == 1) {
+            engine.setStartLevel(1 + game % 20);
+            engine.setGravityCurve(true);
+        } else {
+            engine.setTicksPerRow(1 + game % 3);
+        }
+        engine.setRewindBuffer(new RewindBuffer(1 << 20));
+
+        Policy bot = new BotPolicy(width, height);
+        byte[][] snapshots = new byte[SNAPSHOTS][]; // by tick modulo SNAPSHOTS
+        snapshots[0] = snapshot(engine);
+        int rewinds = 0; // checked against a snapshot
+
+        for (int tick = 0; tick < TICKS && !engine.isOver(); tick++) {
+            step(engine, bot, random, snapshots);
+            if (random.nextInt(300) != 0) continue;
+
+            if (random.nextBoolean()) engine.apply(Input.HARD_DROP); // inputs since the last tick are undone too
+            long before = engine.getTicks();
+            int ticks = random.nextInt(MAX_REWIND);
+            int undone = engine.rewind(ticks);
+
+            long now = engine.getTicks();
+            String what = "game " + game + " rewound by " + ticks + " from tick " + before;
+            if (undone != Math.min(ticks, before) || now != before - undone) {
+                mismatch(what + ": undid " + undone + " ticks, now at " + now);
+                continue;
+            }
+            for (long undoneTick = now + 1; undoneTick <= before; undoneTick++) snapshots[(int) (undoneTick % SNAPSHOTS)] = null;
+            byte[] expected = snapshots[(int) (now % SNAPSHOTS)];
+            if (expected == null) continue; // a tick since undone took its slot
+
+            rewinds++;
+            if (!Arrays.equals(expected, snapshot(engine))) mismatch(what + ": saves differently than it did at tick " + now);
+            GameEngine loaded = GameEngine.load(ByteBuffer.wrap(expected));
+            if (!isSameBoard(engine.getBoard(), loaded.getBoard()) || !SnapshotCheck.isSame(engine, loaded)) {
+                mismatch(what + ": differs from its snapshot loaded");
+                continue;
+            }
+
+            long seed = random.nextLong();
+            Policy policy = new RandomPolicy(seed), loadedPolicy = new RandomPolicy(seed);
+            for (int lockstep = 0; lockstep < LOCKSTEP_TICKS && !engine.isOver(); lockstep++) {
+                step(engine, policy, null, snapshots);
+                step(loaded, loadedPolicy, null, null);
+                if (!SnapshotCheck.isSame(engine, loaded)) {
+                    mismatch(what + ": diverged from its snapshot " + lockstep + " ticks later");
+                    break;
+                }
+            }
+        }
+        return rewinds;
+    }
+
+    // one tick of play, with a stray input and garbage now and then when there is a random
+    private static void step(GameEngine engine, Policy policy, SplittableRandom random, byte[][] snapshots) {
+        Input input;
+        while ((input = policy.next(engine)) != null) engine.apply(input);
+        if (random != null && random.nextInt(7) == 0) engine.apply(Input.values()[random.nextInt(4)]);
+        if (random != null && random.nextInt(500) == 0) engine.addGarbage(1 + random.nextInt(2), random.nextInt(engine.getWidth()));
+        engine.tick();
+        if (snapshots != null) snapshots[(int) (engine.getTicks() % SNAPSHOTS)] = snapshot(engine);
+    }
+
+    private static byte[] snapshot(GameEngine engine) {
+        ByteBuffer snapshot = ByteBuffer.allocate(GameEngine.snapshotBytes(engine.getWidth(), engine.getHeight()));
+        engine.save(snapshot);
+        return snapshot.array();
+    }
+
+    // what a snapshot does not hold: the counts and tops BitBoard keeps next to the cells
+    private static boolean isSameBoard(BitBoard a, BitBoard b) {
+        if (a.getHash() != b.getHash() || a.getOccupiedCount() != b.getOccupiedCount()) return false;
+        for (int y = 0; y < a.getHeight(); y++) {
+            if (a.getRowCount(y) != b.getRowCount(y)) return false;
+        }
+        return true;
+    }
+
+    // a rewind does not depend on the length of the game, only on the ticks it undoes
+    private static void timeRewind() {
+        GameEngine game = new GameEngine(10, 20, 5, Randomizer.BAG); // the bot places almost 10,000 pieces
+        game.setTicksPerRow(30);
+        game.setRewindBuffer(new RewindBuffer(1 << 20));
+        BotPolicy bot = new BotPolicy(10, 20);
+
+        for (int round = 0; round < 10 && !game.isOver(); round++) {
+            for (int tick = 0; tick < 3 * TIMED_TICKS / 2 && !game.isOver(); tick++) step(game, bot, null, null);
+            long start = System.nanoTime();
+            int undone = game.rewind(TIMED_TICKS);
+            System.out.printf("rewind %d ticks %.2f ms, %d pieces in%n", undone, (System.nanoTime() - start) / 1e6, game.getPiecesPlaced());
+        }
+    }
+
+    private static void mismatch(String what) {
+        mismatches++;
+        if (mismatches <= 10) System.out.println("MISMATCH " + what);
+    }
+}
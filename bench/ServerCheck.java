@@ -0,0 +1,32 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays bot matches through a GameServer over loopback and checks that every client's copies of
+ * the boards stay in lockstep with the server's engines, see GameClient.getMismatches():
+ *
+ *      java -cp out ServerCheck [clients] [players per match] [seed]
+ *
+ * Exits with status 1 if a board did not fit its copy or a client's match did not end.
+ */
+public class ServerCheck {
+    public static void main(String[] args) throws InterruptedException {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        GameServer server = new GameServer(0, players, 10, 20, seed);
+        Thread thread = new Thread(server, "game-server");
+        thread.start();
+
+        long start = System.nanoTime();
+        GameClient client = new GameClient("localhost", server.getPort(), clients);
+        client.run();
+        server.stop();
+        thread.join();
+
+        System.out.println(client.getSummary());
+        System.out.printf("seed %d, %d matches in %d ms, %d boards checked, %d mismatches%n", seed, server.getMatchesPlayed(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), client.getBoardsChecked(), client.getMismatches());
+        if (client.getMismatches() > 0 || client.getGames() != clients) System.exit(1);
+    }
+}
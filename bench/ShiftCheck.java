@@ -0,0 +1,148 @@
+import java.util.SplittableRandom;
+
+/**
+ * Randomized check of BitBoard's row moves against a naive copy of the cells:
+ *
+ *      java -cp out ShiftCheck [seed]
+ *
+ *      shiftUp     the garbage push: the cells move up by a random number of rows
+ *      shiftDown   undoes shiftUp() and the garbage under the stack, with the rows that fell off set again
+ *      insertRow   undoes clearFullRows(), the cleared rows put back bottom first as rewind does
+ *
+ * Fills random boards of random sizes, some with stale column tops, and compares every cell, the
+ * overflow result, the row counts, the occupied count, the column tops, the top row and the hash.
+ * Exits with status 1 on any mismatch.
+ */
+public class ShiftCheck {
+    private static final int BOARDS = 20000;
+
+    private static long mismatches = 0;
+
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(args.length > 0 ? Long.parseLong(args[0]) : 5);
+
+        for (int trial = 0; trial < BOARDS; trial++) {
+            checkShiftUp(randomBoard(random), random);
+            checkShiftDown(randomBoard(random), random);
+            checkInsertRow(randomBoard(random), random);
+        }
+
+        System.out.printf("%d boards, %d mismatches%n", 3 * BOARDS, mismatches);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static void checkShiftUp(BitBoard board, SplittableRandom random) {
+        int width = board.getWidth(), height = board.getHeight();
+        byte[][] before = cells(board);
+        int rows = 1 + random.nextInt(height);
+
+        boolean isOverflow = false;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < width; x++) isOverflow |= before[y][x] != BitBoard.EMPTY;
+        }
+        check(board.shiftUp(rows) == isOverflow, board, "shiftUp(" + rows + ") overflow");
+
+        byte[][] expected = new byte[height][width];
+        for (int y = 0; y + rows < height; y++) expected[y] = before[y + rows];
+        checkCells(board, expected, "shiftUp(" + rows + ")");
+    }
+
+    // garbage pushed in and taken out again, as GameEngine.rewind() does
+    private static void checkShiftDown(BitBoard board, SplittableRandom random) {
+        int width = board.getWidth(), height = board.getHeight();
+        byte[][] before = cells(board);
+        int rows = 1 + random.nextInt(height);
+
+        board.shiftUp(rows);
+        for (int y = height - rows; y < height; y++) {
+            int hole = random.nextInt(width);
+            for (int x = 0; x < width; x++) {
+                if (x != hole) board.set(x, y, (byte) (1 + random.nextInt(8)));
+            }
+        }
+        board.shiftDown(rows);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < width; x++) {
+                if (before[y][x] != BitBoard.EMPTY) board.set(x, y, before[y][x]);
+            }
+        }
+        checkCells(board, before, "shiftUp(" + rows + ") then shiftDown(" + rows + ")");
+    }
+
+    // a few rows filled up, cleared in a random range and put back, as GameEngine.rewind() does
+    private static void checkInsertRow(BitBoard board, SplittableRandom random) {
+        int width = board.getWidth(), height = board.getHeight();
+        for (int i = random.nextInt(5); i > 0; i--) {
+            int y = random.nextInt(height);
+            for (int x = 0; x < width; x++) board.set(x, y, (byte) (1 + random.nextInt(8)));
+        }
+        byte[][] before = cells(board);
+        int fromRow = random.nextInt(height), toRow = fromRow + random.nextInt(height - fromRow);
+
+        int[] clearedRows = new int[height];
+        int cleared = board.clearFullRows(clearedRows, fromRow, toRow);
+        for (int i = 0; i < cleared; i++) board.insertRow(clearedRows[i], before[clearedRows[i]]);
+        checkCells(board, before, "clearFullRows(" + fromRow + ", " + toRow + ") of " + cleared + " then insertRow()");
+    }
+
+    // random rows from a random top down, then a few column tops emptied and left stale
+    static BitBoard randomBoard(SplittableRandom random) {
+        int width = 4 + random.nextInt(140), height = 4 + random.nextInt(30);
+        BitBoard board = new BitBoard(width, height);
+
+        for (int y = random.nextInt(height + 1); y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (random.nextInt(3) > 0) board.set(x, y, (byte) (1 + random.nextInt(8)));
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            int x = random.nextInt(width);
+            board.set(x, Math.min(height - 1, board.getColumnTop(x)), BitBoard.EMPTY);
+        }
+
+        return board;
+    }
+
+    // the colors of every cell, EMPTY where there is no tile
+    static byte[][] cells(BitBoard board) {
+        byte[][] cells = new byte[board.getHeight()][board.getWidth()];
+        for (int y = 0; y < board.getHeight(); y++) {
+            for (int x = 0; x < board.getWidth(); x++) cells[y][x] = board.isOccupied(x, y) ? board.getColor(x, y) : BitBoard.EMPTY;
+        }
+        return cells;
+    }
+
+    // the cells and everything BitBoard keeps about them
+    static void checkCells(BitBoard board, byte[][] expected, String operation) {
+        int width = board.getWidth(), height = board.getHeight();
+        BitBoard naive = new BitBoard(width, height);
+        int occupied = 0, topRow = height;
+
+        for (int y = 0; y < height; y++) {
+            int count = 0;
+            for (int x = 0; x < width; x++) {
+                byte actual = board.isOccupied(x, y) ? board.getColor(x, y) : BitBoard.EMPTY;
+                check(actual == expected[y][x], board, operation + " cell (" + x + ", " + y + ")");
+                if (expected[y][x] == BitBoard.EMPTY) continue;
+
+                naive.set(x, y, expected[y][x]);
+                count++;
+            }
+            check(count == board.getRowCount(y), board, operation + " row count " + y);
+            occupied += count;
+            if (count > 0) topRow = Math.min(topRow, y);
+        }
+
+        check(occupied == board.getOccupiedCount(), board, operation + " occupied count");
+        check(board.getTopRow() <= topRow, board, operation + " top row");
+        for (int x = 0; x < width; x++) check(naive.getColumnTop(x) == board.getColumnTop(x), board, operation + " column top " + x);
+        check(naive.getHash() == board.getHash(), board, operation + " hash");
+    }
+
+    static void check(boolean isMatch, BitBoard board, String what) {
+        if (isMatch) return;
+
+        mismatches++;
+        if (mismatches <= 10) System.out.printf("MISMATCH %d x %d board, %s%n", board.getWidth(), board.getHeight(), what);
+    }
+}
@@ -0,0 +1,218 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Randomized check of GameEngine.save() / load() / restore():
+ *
+ *      java -cp out SnapshotCheck
+ *
+ *      generators  SplitRandom draws what java.util.SplittableRandom draws, split or not, so
+ *                  seeded games are the same as before it
+ *      lockstep    200 games of different sizes, randomizers, gravity and policies are saved
+ *                  mid-play; each loaded copy plays on next to the original and must not diverge
+ *      round trip  a loaded snapshot saves to the same bytes
+ *      corrupt     snapshots with random bytes changed either load and play on, or throw
+ *                  IllegalArgumentException from load() and from restore(), which leaves its engine as it was
+ *
+ * Times restores early and late in a game, and saves, before the corrupt snapshots. Exits with
+ * status 1 on any mismatch.
+ */
+public class SnapshotCheck {
+    private static final int GAMES = 200;
+    private static final int LOCKSTEP_TICKS = 3000;
+    private static final int TIMED_OPERATIONS = 100_000;
+    private static final int CORRUPT_SNAPSHOTS = 20_000;
+
+    private static long mismatches = 0;
+
+    public static void main(String[] args) {
+        checkGenerators();
+
+        long ticks = 0;
+        for (int game = 0; game < GAMES; game++) ticks += checkGame(game);
+        System.out.printf("%d games, %d lockstep ticks, %d mismatches%n", GAMES, ticks, mismatches);
+
+        timeRestore();
+        checkCorrupt(); // after the timing, the exceptions would slow the compiled restore down
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static void checkGenerators() {
+        SplittableRandom seeds = new SplittableRandom(11);
+        for (int trial = 0; trial < 1000; trial++) {
+            long seed = seeds.nextLong();
+            SplittableRandom expected = new SplittableRandom(seed);
+            SplitRandom actual = new SplitRandom(seed);
+
+            for (int draw = 0; draw < 1000; draw++) {
+                if (draw % 100 == 99) { // a split continues both the parent and the child
+                    expected = expected.split();
+                    actual = actual.split();
+                }
+                int bound = 1 + seeds.nextInt(draw % 2 == 0 ? 100 : Integer.MAX_VALUE);
+                if (expected.nextInt(bound) != actual.nextInt(bound)) mismatch("SplitRandom seed " + seed + " draw " + draw + " bound " + bound);
+            }
+        }
+    }
+
+    // plays a game for a while, saves and loads it, then plays both on; returns the ticks compared
+    private static int checkGame(int game) {
+        int width = game % 3 == 0 ? 70 : 10, height = game % 3 == 0 ? 40 : 20;
+        GameEngine original = new GameEngine(width, height, game, game % 2 == 0 ? Randomizer.BAG : Randomizer.UNIFORM);
+        if (game % 4 == 1) {
+            original.setStartLevel(1 + game % 20);
+            original.setGravityCurve(true);
+        } else {
+            original.setTicksPerRow(1 + game % 3);
+        }
+
+        Policy policy = game % 4 == 0 ? new RandomPolicy(game) : new BotPolicy(width, height);
+        play(original, policy, 50 + game * 37 % 3000);
+        if (game % 5 == 0) original.addGarbage(2, game % width);
+
+        // at an odd offset, the snapshot is not aligned in its buffer
+        ByteBuffer snapshot = ByteBuffer.allocate(GameEngine.snapshotBytes(width, height) + 3);
+        snapshot.position(3);
+        original.save(snapshot);
+        if (snapshot.position() != 3 + GameEngine.snapshotBytes(width, height)) mismatch("game " + game + " snapshot size " + (snapshot.position() - 3));
+        snapshot.position(3);
+        GameEngine copy = GameEngine.load(snapshot);
+
+        ByteBuffer again = ByteBuffer.allocate(snapshot.capacity());
+        again.position(3);
+        copy.save(again);
+        if (!Arrays.equals(snapshot.array(), again.array())) mismatch("game " + game + " saves differently after a round trip");
+
+        Policy originalPolicy = new RandomPolicy(~game), copyPolicy = new RandomPolicy(~game);
+        for (int tick = 0; tick < LOCKSTEP_TICKS; tick++) {
+            play(original, originalPolicy, 1);
+            play(copy, copyPolicy, 1);
+            if (!isSame(original, copy)) {
+                mismatch("game " + game + " diverged " + tick + " ticks after the snapshot");
+                return tick + 1;
+            }
+        }
+        return LOCKSTEP_TICKS;
+    }
+
+    private static void checkCorrupt() {
+        SplittableRandom random = new SplittableRandom(13);
+        int rejected = 0;
+        for (int trial = 0; trial < CORRUPT_SNAPSHOTS; trial++) {
+            int width = 4 + random.nextInt(80), height = 4 + random.nextInt(40);
+            GameEngine game = new GameEngine(width, height, trial, trial % 2 == 0 ? Randomizer.BAG : Randomizer.UNIFORM);
+            play(game, new RandomPolicy(trial), random.nextInt(2000));
+            ByteBuffer snapshot = ByteBuffer.allocate(GameEngine.snapshotBytes(width, height));
+            game.save(snapshot);
+
+            // a few bytes of the header or the board, or one bit
+            for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                int at = random.nextInt(4) == 0 ? 8 + random.nextInt(GameEngine.SNAPSHOT_HEADER_BYTES - 8) : random.nextInt(snapshot.capacity());
+                snapshot.put(at, random.nextBoolean() ? (byte) random.nextInt() : (byte) (snapshot.get(at) ^ 1 << random.nextInt(8)));
+            }
+
+            byte[] before = snapshotOf(game);
+            try {
+                snapshot.clear();
+                game.restore(snapshot);
+            } catch (IllegalArgumentException e) {
+                rejected++;
+                if (!Arrays.equals(before, snapshotOf(game))) mismatch("corrupt snapshot " + trial + " changed its engine: " + e.getMessage());
+                try {
+                    snapshot.clear();
+                    GameEngine.load(snapshot);
+                    mismatch("corrupt snapshot " + trial + " loads but does not restore: " + e.getMessage());
+                } catch (IllegalArgumentException expected) {
+                }
+                continue;
+            }
+
+            try {
+                snapshot.clear();
+                play(GameEngine.load(snapshot), new RandomPolicy(~trial), 500);
+                play(game, new RandomPolicy(~trial), 500);
+            } catch (RuntimeException e) {
+                mismatch("corrupt snapshot " + trial + " restored, then " + e);
+            }
+        }
+        System.out.printf("%d corrupt snapshots, %d rejected, the others played on; %d mismatches%n", CORRUPT_SNAPSHOTS, rejected, mismatches);
+    }
+
+    private static byte[] snapshotOf(GameEngine engine) {
+        ByteBuffer snapshot = ByteBuffer.allocate(GameEngine.snapshotBytes(engine.getWidth(), engine.getHeight()));
+        engine.save(snapshot);
+        return snapshot.array();
+    }
+
+    private static void play(GameEngine engine, Policy policy, int ticks) {
+        for (int tick = 0; tick < ticks && !engine.isOver(); tick++) {
+            Input input;
+            while ((input = policy.next(engine)) != null) engine.apply(input);
+            engine.tick();
+        }
+    }
+
+    static boolean isSame(GameEngine a, GameEngine b) {
+        if (a.getBoard().getHash() != b.getBoard().getHash() || a.getState() != b.getState() || a.getTicks() != b.getTicks()) return false;
+        if (a.getTetromino() != b.getTetromino() || a.getRotation() != b.getRotation() || a.getX() != b.getX() || a.getY() != b.getY()) return false;
+        if (a.getGhostY() != b.getGhostY() || a.getActiveColor() != b.getActiveColor()) return false;
+        if (a.getPiecesPlaced() != b.getPiecesPlaced() || a.getLinesCleared() != b.getLinesCleared() || a.getSteps() != b.getSteps()) return false;
+        if (a.getScore() != b.getScore() || a.getLevel() != b.getLevel() || a.getTicksPerRow() != b.getTicksPerRow()) return false;
+
+        for (int x = 0; x < a.getWidth(); x++) {
+            if (a.getBoard().getColumnTop(x) != b.getBoard().getColumnTop(x)) return false;
+        }
+        for (int tetromino = 0; tetromino < Tetromino.COUNT; tetromino++) {
+            if (a.getTetrominoCount(tetromino) != b.getTetrominoCount(tetromino)) return false;
+        }
+        for (Input input : Input.values()) {
+            if (a.getInputCount(input) != b.getInputCount(input)) return false;
+        }
+        return true;
+    }
+
+    // a restore does not depend on the length of the game: one 100 pieces in takes as long as one at the end
+    private static void timeRestore() {
+        GameEngine game = new GameEngine(10, 20, 5, Randomizer.BAG); // the bot places almost 10,000 pieces
+        game.setTicksPerRow(30);
+        BotPolicy bot = new BotPolicy(10, 20);
+        while (game.getPiecesPlaced() < 100) play(game, bot, 1);
+        ByteBuffer early = ByteBuffer.allocateDirect(GameEngine.snapshotBytes(10, 20));
+        game.save(early);
+        long earlyPieces = game.getPiecesPlaced();
+        play(game, bot, Integer.MAX_VALUE);
+        ByteBuffer late = ByteBuffer.allocateDirect(GameEngine.snapshotBytes(10, 20));
+        game.save(late);
+
+        GameEngine restored = new GameEngine(10, 20, 1, Randomizer.BAG);
+        for (int round = 0; round < 5; round++) {
+            System.out.printf("restore %.2f us %d pieces in, %.2f us %d pieces in; save %.2f us%n",
+                    restoreMicros(restored, early), earlyPieces, restoreMicros(restored, late), game.getPiecesPlaced(), saveMicros(game, late));
+        }
+        if (!isSame(game, restored)) mismatch("the timed restore");
+    }
+
+    private static double restoreMicros(GameEngine engine, ByteBuffer snapshot) {
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_OPERATIONS; i++) {
+            snapshot.clear();
+            engine.restore(snapshot);
+        }
+        return (System.nanoTime() - start) / 1000.0 / TIMED_OPERATIONS;
+    }
+
+    private static double saveMicros(GameEngine engine, ByteBuffer snapshot) {
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_OPERATIONS; i++) {
+            snapshot.clear();
+            engine.save(snapshot);
+        }
+        return (System.nanoTime() - start) / 1000.0 / TIMED_OPERATIONS;
+    }
+
+    private static void mismatch(String what) {
+        mismatches++;
+        if (mismatches <= 10) System.out.println("MISMATCH " + what);
+    }
+}
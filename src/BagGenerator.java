@@ -0,0 +1,64 @@
+// 7-bag: deals all 7 tetrominos in a random order, then starts a new bag
+public class BagGenerator implements PieceGenerator {
+    private static final int BAG_BITS = 3; // per tetromino in getState()
+
+    private final SplitRandom random;
+    private final int[] bag = new int[Tetromino.COUNT]; // always a permutation of all tetrominos
+    private int left = 0; // tetrominos not dealt yet are bag[0 .. left - 1]
+
+    public BagGenerator(SplitRandom random) {
+        this.random = random;
+
+        for (int tetromino = 0; tetromino < Tetromino.COUNT; tetromino++) {
+            bag[tetromino] = tetromino;
+        }
+    }
+
+    @Override
+    public int next() {
+        if (left == 0) left = bag.length; // new bag
+
+        // move a random remaining tetromino behind the remaining ones
+        int index = random.nextInt(left);
+        int tetromino = bag[index];
+        bag[index] = bag[left - 1];
+        bag[left - 1] = tetromino;
+        left--;
+
+        return tetromino;
+    }
+
+    @Override
+    public SplitRandom getRandom() {
+        return random;
+    }
+
+    // the bag packed BAG_BITS bits a tetromino, tetrominos left above them
+    @Override
+    public int getState() {
+        int state = left << (BAG_BITS * bag.length);
+        for (int index = 0; index < bag.length; index++) state |= bag[index] << (BAG_BITS * index);
+        return state;
+    }
+
+    @Override
+    public void setState(int state) {
+        if (!isState(state)) throw new IllegalArgumentException("Not a 7-bag state: " + Integer.toHexString(state));
+
+        for (int index = 0; index < bag.length; index++) bag[index] = state >>> (BAG_BITS * index) & (1 << BAG_BITS) - 1;
+        left = state >>> (BAG_BITS * bag.length);
+    }
+
+    // whether getState() could have returned state: every tetromino once, or the bag would deal a tetromino twice
+    public static boolean isState(int state) {
+        if (state >>> (BAG_BITS * Tetromino.COUNT) > Tetromino.COUNT) return false; // tetrominos left
+
+        int dealt = 0;
+        for (int index = 0; index < Tetromino.COUNT; index++) {
+            int tetromino = state >>> (BAG_BITS * index) & (1 << BAG_BITS) - 1;
+            if (tetromino >= Tetromino.COUNT || (dealt & 1 << tetromino) != 0) return false;
+            dealt |= 1 << tetromino;
+        }
+        return true;
+    }
+}
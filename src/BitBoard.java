@@ -0,0 +1,450 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Occupancy model of the board: one bit per tile, rows packed into 64-bit words,
+ * with tile colors kept in a parallel array of palette indexes (see Utils.PALETTE).
+ *
+ * set() also counts the filled tiles of every row and of the board, so a full row or an
+ * empty board is one comparison, whatever the board's size.
+ *
+ * A skyline, the highest filled row of every column, is kept next to the bits so a
+ * tetromino's drop distance is a lookup per column instead of a collision test per row.
+ */
+public class BitBoard {
+    public static final byte EMPTY = 0; // palette index of an empty tile
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] cells; // occupancy, row-major, wordsPerRow words per row
+    private final byte[] colors; // palette index per tile, row-major
+    private final int[] rowCounts; // filled tiles per row, a row is full at width
+    private int occupied = 0; // filled tiles on the whole board
+    private long hash = 0; // Zobrist hash of the occupancy, kept up to date by set()
+    private boolean isHashValid = true; // false after bulk row moves, getHash() recomputes it then
+    private int topRow; // no tile above this row is filled, height when empty; may lag behind emptied tiles
+    private final int[] columnTops; // highest filled row of each column, height if the column is empty
+    private final boolean[] isColumnTopStale; // its top tile was emptied: the real top is at or below columnTops
+    private boolean isSkylineValid = true; // false after bulk row copies, getColumnTop() recomputes it then
+
+    public BitBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        wordsPerRow = (width + 63) >>> 6;
+        cells = new long[wordsPerRow * height];
+        colors = new byte[width * height];
+        rowCounts = new int[height];
+        topRow = height;
+        columnTops = new int[width];
+        Arrays.fill(columnTops, height);
+        isColumnTopStale = new boolean[width];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    // occupancy of columns word * 64 .. word * 64 + 63 of a row, bit i is column word * 64 + i
+    public long getRowWord(int row, int word) {
+        return cells[row * wordsPerRow + word];
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return (cells[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0; // shift distance is taken mod 64
+    }
+
+    public byte getColor(int x, int y) {
+        return colors[y * width + x];
+    }
+
+    public void set(int x, int y, byte color) {
+        int word = y * wordsPerRow + (x >>> 6);
+        long before = cells[word];
+
+        if (color == EMPTY) {
+            cells[word] &= ~(1L << x);
+            if (y == columnTops[x]) isColumnTopStale[x] = true; // found again when it is asked for
+        } else {
+            cells[word] |= 1L << x;
+            if (y < topRow) topRow = y;
+
+            if (y <= columnTops[x]) {
+                columnTops[x] = y;
+                isColumnTopStale[x] = false;
+            }
+        }
+
+        if (cells[word] != before) {
+            int change = color == EMPTY ? -1 : 1;
+            rowCounts[y] += change;
+            occupied += change;
+            if (isHashValid) hash ^= Zobrist.tile(y * width + x);
+        }
+        colors[y * width + x] = color;
+    }
+
+    // highest filled row of a column, height if the column is empty
+    public int getColumnTop(int x) {
+        if (!isSkylineValid) {
+            for (int col = 0; col < width; col++) columnTops[col] = firstFilledRow(col, topRow);
+            Arrays.fill(isColumnTopStale, false);
+            isSkylineValid = true;
+        }
+
+        if (isColumnTopStale[x]) {
+            columnTops[x] = firstFilledRow(x, columnTops[x]);
+            isColumnTopStale[x] = false;
+        }
+
+        return columnTops[x];
+    }
+
+    /**
+     * Rows the tetromino can fall straight down from (x, y) before it lands; the tetromino must
+     * not be on the board. A tile above its column's skyline lands right on it, so that is one
+     * lookup per tile. Only a tile under an overhang scans its column for the next filled row.
+     */
+    public int dropDistance(int tetromino, int rotation, int x, int y) {
+        int shape = Tetromino.shape(tetromino, rotation);
+        int distance = Integer.MAX_VALUE;
+
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            int tileX = x + Tetromino.cellX(shape, tile);
+            int tileY = y + Tetromino.cellY(shape, tile);
+
+            int columnTop = getColumnTop(tileX);
+            int landing = tileY < columnTop ? columnTop : firstFilledRow(tileX, tileY + 1); // under an overhang
+            distance = Math.min(distance, landing - 1 - tileY);
+        }
+
+        return distance;
+    }
+
+    // Zobrist hash of the filled tiles, equal boards (colors aside) have equal hashes
+    public long getHash() {
+        if (!isHashValid) {
+            hash = 0;
+
+            for (int row = 0; row < height; row++) {
+                for (int word = 0; word < wordsPerRow; word++) {
+                    for (long bits = cells[row * wordsPerRow + word]; bits != 0; bits &= bits - 1) {
+                        hash ^= Zobrist.tile(row * width + word * 64 + Long.numberOfTrailingZeros(bits));
+                    }
+                }
+            }
+
+            isHashValid = true;
+        }
+
+        return hash;
+    }
+
+    // paints a tetromino with its rotation center at (x, y), tiles above the board (y < 0) are hidden
+    public void fill(int tetromino, int rotation, int x, int y, byte color) {
+        int shape = Tetromino.shape(tetromino, rotation);
+
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            int tileY = y + Tetromino.cellY(shape, tile);
+            if (tileY >= 0) set(x + Tetromino.cellX(shape, tile), tileY, color);
+        }
+    }
+
+    // true if the tetromino does not fit at (x, y): it is out of the walls / floor or overlaps filled tiles,
+    // tiles above the board (y < 0) are only checked against the walls
+    public boolean collides(int tetromino, int rotation, int x, int y) {
+        int shape = Tetromino.shape(tetromino, rotation);
+
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            int tileX = x + Tetromino.cellX(shape, tile);
+            int tileY = y + Tetromino.cellY(shape, tile);
+
+            if (tileX < 0 || tileX >= width || tileY >= height) return true;
+            if (tileY >= 0 && isOccupied(tileX, tileY)) return true;
+        }
+
+        return false;
+    }
+
+    public boolean isRowFull(int row) {
+        return rowCounts[row] == width;
+    }
+
+    public int getRowCount(int row) {
+        return rowCounts[row];
+    }
+
+    public int getOccupiedCount() {
+        return occupied;
+    }
+
+    // rows above it are empty, so scans of the stack can start here instead of at row 0
+    public int getTopRow() {
+        return topRow;
+    }
+
+    public boolean isEmpty() {
+        return occupied == 0;
+    }
+
+    // rows from the floor up to the highest filled tile
+    public int getStackHeight() {
+        for (int row = topRow; row < height; row++) {
+            if (rowCounts[row] != 0) return height - row;
+        }
+
+        return 0;
+    }
+
+    public int clearFullRows(int[] clearedRows) {
+        return clearFullRows(clearedRows, 0, height - 1);
+    }
+
+    /**
+     * Removes the full rows among fromRow .. toRow in one bottom-up compaction pass: rows that
+     * stay are moved down over the removed ones and the freed rows at the top of the stack are
+     * emptied. Only rows from toRow up to the top of the stack are touched, so a lock on a large
+     * board costs the rows above it, not the board. Nothing is allocated; the removed rows
+     * (original indexes, bottom first) are written to clearedRows.
+     *
+     * @return number of removed rows
+     */
+    public int clearFullRows(int[] clearedRows, int fromRow, int toRow) {
+        int cleared = 0;
+
+        for (int row = Math.min(toRow, height - 1); row >= topRow; row--) {
+            if (row >= fromRow && isRowFull(row)) {
+                clearedRows[cleared++] = row;
+            } else if (cleared > 0) {
+                System.arraycopy(cells, row * wordsPerRow, cells, (row + cleared) * wordsPerRow, wordsPerRow);
+                System.arraycopy(colors, row * width, colors, (row + cleared) * width, width);
+                rowCounts[row + cleared] = rowCounts[row];
+            }
+        }
+
+        if (cleared > 0) {
+            Arrays.fill(cells, topRow * wordsPerRow, (topRow + cleared) * wordsPerRow, 0L);
+            Arrays.fill(colors, topRow * width, (topRow + cleared) * width, EMPTY);
+            Arrays.fill(rowCounts, topRow, topRow + cleared, 0);
+            occupied -= cleared * width;
+            topRow += cleared;
+            isHashValid = false;
+            if (isSkylineValid) updateSkyline(clearedRows[cleared - 1], cleared);
+        }
+
+        return cleared;
+    }
+
+    // a full row has a tile in every column, so every column's top is at or above the highest cleared row
+    private void updateSkyline(int highestCleared, int cleared) {
+        for (int col = 0; col < width; col++) {
+            if (isColumnTopStale[col]) continue; // rows only moved down, so columnTops is still at or above the real top
+            if (columnTops[col] < highestCleared) {
+                columnTops[col] += cleared; // above every cleared row, moved down with the stack
+            } else {
+                columnTops[col] = highestCleared + 1; // the top was cleared, what is left lies further down
+                isColumnTopStale[col] = true;
+            }
+        }
+    }
+
+    /**
+     * Moves every row up by rows, e.g. to push garbage in under the stack: the bottom rows are
+     * emptied and the top rows fall off the board.
+     *
+     * @return true if a filled tile fell off
+     */
+    public boolean shiftUp(int rows) {
+        if (topRow == height) return false; // nothing to move
+
+        rows = Math.min(rows, height);
+        int fallen = 0;
+        for (int row = topRow; row < rows; row++) fallen += rowCounts[row];
+        occupied -= fallen;
+
+        int from = Math.max(topRow, rows); // rows above topRow are empty, nothing to copy there
+        System.arraycopy(cells, from * wordsPerRow, cells, (from - rows) * wordsPerRow, (height - from) * wordsPerRow);
+        System.arraycopy(colors, from * width, colors, (from - rows) * width, (height - from) * width);
+        System.arraycopy(rowCounts, from, rowCounts, from - rows, height - from);
+        Arrays.fill(cells, (height - rows) * wordsPerRow, cells.length, 0L);
+        Arrays.fill(colors, (height - rows) * width, colors.length, EMPTY);
+        Arrays.fill(rowCounts, height - rows, height, 0);
+
+        topRow = occupied == 0 ? height : Math.max(topRow - rows, 0);
+        isHashValid = false;
+        for (int col = 0; col < width; col++) {
+            if (columnTops[col] == height) continue; // still empty
+            if (columnTops[col] < rows) {
+                columnTops[col] = 0; // its top fell off, what is left is found again when asked for
+                isColumnTopStale[col] = true;
+            } else {
+                columnTops[col] -= rows;
+            }
+        }
+
+        return fallen > 0;
+    }
+
+    /**
+     * Undoes shiftUp(): moves every row down by rows, the bottom rows fall off the board and the
+     * top rows are emptied. The rows that fell off the top are not known here, set() them again.
+     */
+    public void shiftDown(int rows) {
+        rows = Math.min(rows, height);
+        for (int row = height - rows; row < height; row++) occupied -= rowCounts[row];
+
+        int from = Math.min(topRow, height - rows); // rows above topRow are empty, nothing to copy there
+        System.arraycopy(cells, from * wordsPerRow, cells, (from + rows) * wordsPerRow, (height - rows - from) * wordsPerRow);
+        System.arraycopy(colors, from * width, colors, (from + rows) * width, (height - rows - from) * width);
+        System.arraycopy(rowCounts, from, rowCounts, from + rows, height - rows - from);
+        Arrays.fill(cells, from * wordsPerRow, (from + rows) * wordsPerRow, 0L);
+        Arrays.fill(colors, from * width, (from + rows) * width, EMPTY);
+        Arrays.fill(rowCounts, from, from + rows, 0);
+
+        topRow = occupied == 0 ? height : from + rows;
+        isHashValid = false;
+        isSkylineValid = false;
+    }
+
+    /**
+     * Undoes the removal of one row by clearFullRows(): rows 1 .. row move up by one over row 0,
+     * which must be empty, and rowColors (width palette indexes) are put back at row. The rows a
+     * clear removed go back bottom first.
+     */
+    public void insertRow(int row, byte[] rowColors) {
+        int from = Math.max(topRow, 1); // rows above topRow are empty, nothing to move there
+        if (from <= row) {
+            occupied -= rowCounts[from - 1];
+            System.arraycopy(cells, from * wordsPerRow, cells, (from - 1) * wordsPerRow, (row - from + 1) * wordsPerRow);
+            System.arraycopy(colors, from * width, colors, (from - 1) * width, (row - from + 1) * width);
+            System.arraycopy(rowCounts, from, rowCounts, from - 1, row - from + 1);
+            topRow = from - 1;
+        } else {
+            occupied -= rowCounts[row];
+        }
+
+        int count = 0;
+        Arrays.fill(cells, row * wordsPerRow, (row + 1) * wordsPerRow, 0L);
+        for (int x = 0; x < width; x++) {
+            if (rowColors[x] == EMPTY) continue;
+            cells[row * wordsPerRow + (x >>> 6)] |= 1L << x;
+            count++;
+        }
+        System.arraycopy(rowColors, 0, colors, row * width, width);
+        rowCounts[row] = count;
+        occupied += count;
+
+        if (count > 0) topRow = Math.min(topRow, row);
+        isHashValid = false;
+        isSkylineValid = false;
+    }
+
+    // first filled row of a column at or below fromRow, height if there is none
+    private int firstFilledRow(int x, int fromRow) {
+        int word = x >>> 6;
+        long bit = 1L << x;
+
+        for (int row = Math.max(fromRow, 0); row < height; row++) {
+            if ((cells[row * wordsPerRow + word] & bit) != 0) return row;
+        }
+
+        return height;
+    }
+
+    // the cells then the colors at the buffer's position, 8 * wordsPerRow * height + width * height bytes in bulk
+    public void writeTo(ByteBuffer out) {
+        out.asLongBuffer().put(cells);
+        out.position(out.position() + 8 * cells.length);
+        out.put(colors);
+    }
+
+    // reads what writeTo() wrote for a board of this size, the counts and the top row are found again from the cells
+    public void readFrom(ByteBuffer in) {
+        in.asLongBuffer().get(cells);
+        in.position(in.position() + 8 * cells.length);
+        in.get(colors);
+
+        occupied = 0;
+        topRow = height;
+        for (int row = height - 1; row >= 0; row--) {
+            int count = 0;
+            for (int word = row * wordsPerRow; word < (row + 1) * wordsPerRow; word++) count += Long.bitCount(cells[word]);
+            rowCounts[row] = count;
+            occupied += count;
+            if (count > 0) topRow = row;
+        }
+
+        isHashValid = false;
+        isSkylineValid = false;
+    }
+
+    // whether the cells and the colors agree, e.g. after readFrom() of a file: a color below paletteSize
+    // on every tile, EMPTY on every other cell and no tile beyond the right wall
+    public boolean isConsistent(int paletteSize) {
+        int outside = 0, filled = 0; // outside is negative once a color is not in the palette
+        for (byte color : colors) { // no branches, it runs for every cell
+            outside |= paletteSize - 1 - (color & 0xFF);
+            filled += ((color & 0xFF) + 0xFF) >>> 8; // 1 unless EMPTY
+        }
+        if (outside < 0 || filled != occupied) return false;
+
+        // as many colors as tiles, so the colors agree once every tile has one
+        for (int row = 0; row < height; row++) {
+            for (int word = 0; word < wordsPerRow; word++) {
+                for (long bits = cells[row * wordsPerRow + word]; bits != 0; bits &= bits - 1) {
+                    int x = word * 64 + Long.numberOfTrailingZeros(bits);
+                    if (x >= width || colors[row * width + x] == EMPTY) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // makes this board a copy of another board of the same size
+    public void copyFrom(BitBoard other) {
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        System.arraycopy(other.colors, 0, colors, 0, colors.length);
+        System.arraycopy(other.rowCounts, 0, rowCounts, 0, height);
+        occupied = other.occupied;
+        hash = other.hash;
+        isHashValid = other.isHashValid;
+        topRow = other.topRow;
+        System.arraycopy(other.columnTops, 0, columnTops, 0, width);
+        System.arraycopy(other.isColumnTopStale, 0, isColumnTopStale, 0, width);
+        isSkylineValid = other.isSkylineValid;
+    }
+
+    // copies rows fromRow .. toRow (inclusive) of another board of the same size
+    public void copyRowsFrom(BitBoard other, int fromRow, int toRow) {
+        System.arraycopy(other.cells, fromRow * wordsPerRow, cells, fromRow * wordsPerRow, (toRow - fromRow + 1) * wordsPerRow);
+        System.arraycopy(other.colors, fromRow * width, colors, fromRow * width, (toRow - fromRow + 1) * width);
+        for (int row = fromRow; row <= toRow; row++) {
+            occupied += other.rowCounts[row] - rowCounts[row];
+            rowCounts[row] = other.rowCounts[row];
+        }
+        isHashValid = false;
+        isSkylineValid = false;
+        topRow = Math.min(topRow, Math.max(fromRow, other.topRow)); // the copied rows are filled from there at most
+    }
+
+    public void clear() {
+        Arrays.fill(cells, 0L);
+        Arrays.fill(colors, EMPTY);
+        Arrays.fill(rowCounts, 0);
+        occupied = 0;
+        hash = 0;
+        isHashValid = true;
+        topRow = height;
+        Arrays.fill(columnTops, height);
+        Arrays.fill(isColumnTopStale, false);
+        isSkylineValid = true;
+    }
+}
@@ -2,710 +2,303 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.awt.event.MouseWheelEvent;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-public class Board extends JPanel implements KeyListener {
+// Swing view of a GameEngine: renders the frames its GameLoop publishes and turns key presses into Inputs
+public class Board extends JPanel implements KeyListener, GameLoop.View {
     private final Container frame;
     private Boolean hasStarted = false;
-    private final int TILE_SIZE = 30;
-    private final int BOARD_WIDTH = 10;
-    private final int BOARD_HEIGHT = 20;
-    private Color[][] boardGrid; // 2d array of colors
+    private volatile int tileSize; // pixels per tile, changed by zooming
+    private final int MIN_TILE_SIZE = 2;
+    private final int MAX_TILE_SIZE = 60;
+    private final int BOARD_WIDTH;
+    private final int BOARD_HEIGHT;
+    private final int TICK_RATE = 60; // game loop ticks per second
     private final Color DEFAULT_BORDER_COLOR = Color.WHITE;
-    private final Color DEFAULT_TILE_COLOR = Color.BLACK;
-    private Color ACTIVE_TILE_COLOR = Utils.randomColor();
-    private char currentTetromino = Utils.randomTetromino();
-    private int currentRotation = 0;
-    private int xPos = Utils.random(1, 7);
-    private int yPos = -1;
+    private final GameLoop loop;
+    private final FrameBuffer frameBuffer;
+    private final BoardPainter painter; // atlas and background of this board's size
+    private final int LEADERBOARD_SIZE = 10;
+    private final int REWIND_WORDS = 1 << 18; // history of about ten minutes of play, see RewindBuffer
+    private Path scoresPath = Paths.get(System.getProperty("user.home"), ".swingtetris", "scores.dat");
+    public static final Path SAVED_GAME_PATH = Paths.get(System.getProperty("user.home"), ".swingtetris", "saved.snapshot");
+    private final Metrics metrics = new Metrics();
+    private final Timer overlayTimer; // refreshes the metrics overlay while it is shown
+    private final Rectangle OVERLAY_BOUNDS = new Rectangle(4, 4, 230, 104);
+    private final Color OVERLAY_COLOR = new Color(0, 0, 0, 192);
+    private final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private String windowTitle = "Tetris"; // the score and level go after it
+    private long shownScore = -1; // in the title, loop thread only
+    private int shownLevel = -1;
 
     public Board(Container container) {
-        frame = container;
-        setPreferredSize(new Dimension(TILE_SIZE * BOARD_WIDTH, TILE_SIZE * BOARD_HEIGHT));
-        boardGrid = new Color[BOARD_HEIGHT][BOARD_WIDTH]; // initialize board
-        fillBoard();
+        this(container, newEngine(10, 20), 30);
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-
-        for (int row = 0; row < BOARD_HEIGHT; row++) {
-            for (int col = 0; col < BOARD_WIDTH; col++) {
-                g.setColor(boardGrid[row][col]);
-                g.fillRect(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
-                g.setColor(DEFAULT_BORDER_COLOR);
-                g.drawRect(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
-            }
-        }
+    // a view of an engine the loop has not started yet, e.g. newEngine(), Replay.newEngine() or Snapshot.read(); the board takes the engine's size
+    public Board(Container container, GameEngine engine, int tileSize) {
+        frame = container;
+        BOARD_WIDTH = engine.getWidth();
+        BOARD_HEIGHT = engine.getHeight();
+        this.tileSize = Math.max(MIN_TILE_SIZE, Math.min(MAX_TILE_SIZE, tileSize));
+        setPreferredSize(new Dimension(this.tileSize * BOARD_WIDTH, this.tileSize * BOARD_HEIGHT));
+        addMouseWheelListener(this::mouseWheelMoved);
+        frameBuffer = new FrameBuffer(BOARD_WIDTH, BOARD_HEIGHT);
+        painter = new BoardPainter(BOARD_WIDTH, BOARD_HEIGHT, DEFAULT_BORDER_COLOR);
+        engine.setRewindBuffer(new RewindBuffer(REWIND_WORDS));
+        loop = new GameLoop(engine, frameBuffer, this, TICK_RATE);
+        loop.setMetrics(metrics);
+
+        overlayTimer = new Timer(500, e -> {
+            metrics.sample();
+            repaint(OVERLAY_BOUNDS);
+        });
     }
 
-    private void fillBoard() {
-        fillBoard(DEFAULT_TILE_COLOR);
+    public static GameEngine newEngine(int width, int height) {
+        return newEngine(width, height, 1);
     }
 
-    private void fillBoard(Color color) {
-        for (int row = 0; row < BOARD_HEIGHT; row++) {
-            for (int col = 0; col < BOARD_WIDTH; col++) {
-                boardGrid[row][col] = color;
-            }
-        }
-
+    // gravity from the level's curve, a row a second at level 1 up to 20G, see Levels
+    public static GameEngine newEngine(int width, int height, int startLevel) {
+        GameEngine engine = new GameEngine(width, height, System.nanoTime(), Randomizer.UNIFORM);
+        engine.setStartLevel(startLevel);
+        engine.setGravityCurve(true);
+        return engine;
     }
 
-    private void init() {
-        java.util.Timer timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                // reached limits of floor or other tetrominos
-                if (yPos + 1 >= BOARD_HEIGHT || tetrominoWillCollide(xPos, yPos, currentTetromino, "down", currentRotation)) {
-                    // clear filled lines
-                    clearLines();
-
-                    // You won!
-                    if (isBoardCleared()) {
-                        repaint();
-                        JOptionPane.showMessageDialog(frame, "You won!", "Congratulations", JOptionPane.INFORMATION_MESSAGE);
-                        System.exit(0);
-                    }
-
-                    // You lost!
-                    if (yPos < 2) {
-                        JOptionPane.showMessageDialog(frame, "You lost!", "Game Over", JOptionPane.INFORMATION_MESSAGE);
-                        System.exit(0);
-                    }
-
-                    // new active tetromino
-                    ACTIVE_TILE_COLOR = Utils.randomColor();
-                    currentTetromino = Utils.randomTetromino();
-                    currentRotation = 0;
-                    xPos = Utils.random(1, 7);
-                    yPos = -1;
-                }
-
-                yPos++; // increment y position
-                if (yPos > 0)
-                    fillTetromino(xPos, yPos - 1, DEFAULT_TILE_COLOR, currentTetromino, currentRotation); // remove previous tetromino
-                fillTetromino(xPos, yPos, ACTIVE_TILE_COLOR, currentTetromino, currentRotation); // fill current tetromino
-                repaint(); // Redrawing the board
-            }
-        }, 0, 500);
+    public GameLoop getLoop() {
+        return loop;
     }
 
-    private Boolean isBoardCleared() {
-        int filledTiles = 0;
-
-        for (int row = 0; row < BOARD_HEIGHT; row++) {
-            for (int col = 0; col < BOARD_WIDTH; col++) {
-                if (boardGrid[row][col] != DEFAULT_TILE_COLOR) filledTiles++;
-            }
-        }
-
-        return filledTiles == 0;
+    public Metrics getMetrics() {
+        return metrics;
     }
 
-    private void clearLines() {
-        for (int row = BOARD_HEIGHT - 1; row > 0; row--) {
-            boolean isLineFilled = true;
-
-            for (int col = 0; col < BOARD_WIDTH; col++) {
-                if (boardGrid[row][col] == DEFAULT_TILE_COLOR) {
-                    isLineFilled = false;
-                    break;
-                }
-            }
-
-            if (isLineFilled) {
-                boardGrid = Utils.removeColorArrayFromColor2D(boardGrid, row);
-                boardGrid = Utils.prependColorArrayToColor2D(boardGrid, new Color[BOARD_WIDTH]);
-                fillLine(0, DEFAULT_TILE_COLOR);
-                row++;
-            }
-        }
+    public void start() {
+        hasStarted = true;
+        loop.start();
     }
 
-    private void fillLine(int row, Color color) {
-        for (int col = 0; col < BOARD_WIDTH; col++) {
-            fillTile(col, row, color);
-        }
+    public int getTileSize() {
+        return tileSize;
     }
 
-    private void fillTetromino(int x, int y, Color color, char tetromino, int rotation) {
-        /* I */
-
-        if (tetromino == 'I' && (rotation == 0 || rotation == 2)) {
-            fillTile(x, y, color);
-            fillTile(x - 1, y, color);
-            fillTile(x + 1, y, color);
-            fillTile(x + 2, y, color);
-        }
-
-        if (tetromino == 'I' && (rotation == 1 || rotation == 3)) {
-            fillTile(x, y, color);
-            fillTile(x, y - 1, color);
-            fillTile(x, y + 1, color);
-            fillTile(x, y + 2, color);
-        }
-
-        /* J */
-
-        if (tetromino == 'J' && (rotation == 0)) {
-            /**
-             *      2
-             *      1 @ 3
-             *
-             *        ^
-             *  rotation center
-             */
-            fillTile(x, y, color); // @
-            fillTile(x - 1, y, color); // 1
-            if (y > 0) fillTile(x - 1, y - 1, color); // 2
-            fillTile(x + 1, y, color); // 3
-        }
-
-        if (tetromino == 'J' && rotation == 1) {
-            /**
-             *      1 2
-             *      @       - rotation center
-             *      3
-             */
-            fillTile(x, y, color); // @
-            fillTile(x, y - 1, color); // 1
-            fillTile(x + 1, y - 1, color); // 2
-            fillTile(x, y + 1, color); // 3
-        }
-
-        if (tetromino == 'J' && rotation == 2) {
-            /**
-             *  rotation center
-             *        v
-             *
-             *      3 @ 1
-             *          2
-             */
-            fillTile(x, y, color); // @
-            fillTile(x + 1, y, color); // 1
-            fillTile(x + 1, y + 1, color); // 2
-            fillTile(x - 1, y, color); // 3
-        }
-
-        if (tetromino == 'J' && rotation == 3) {
-            /**
-             *        1
-             *        @
-             *      3 2
-             */
-            fillTile(x, y, color); // @
-            fillTile(x, y - 1, color); // 1
-            fillTile(x, y + 1, color); // 2
-            fillTile(x - 1, y + 1, color); // 3
-        }
+    // grows or shrinks the tiles, a JScrollPane around the board follows the new preferred size
+    public void zoom(int steps) {
+        int newSize = Math.max(MIN_TILE_SIZE, Math.min(MAX_TILE_SIZE, tileSize + steps * Math.max(1, tileSize / 8)));
+        if (newSize == tileSize) return;
 
-        /* L */
-
-        if (tetromino == 'L' && rotation == 0) {
-            /**
-             *          2
-             *      1 @ 3
-             */
-            fillTile(x, y, color); // @
-            fillTile(x - 1, y, color); // 1
-            if (y > 0) fillTile(x + 1, y - 1, color); // 2
-            fillTile(x + 1, y, color); // 3
-        }
-
-        if (tetromino == 'L' && rotation == 1) {
-            /**
-             *      1
-             *      @
-             *      3 2
-             */
-            fillTile(x, y, color); // @
-            fillTile(x, y - 1, color); // 1
-            fillTile(x + 1, y + 1, color); // 2
-            fillTile(x, y + 1, color); // 3
-        }
-
-        if (tetromino == 'L' && rotation == 2) {
-            /**
-             *      3 @ 1
-             *      2
-             */
-            fillTile(x, y, color); // @
-            fillTile(x + 1, y, color); // 1
-            fillTile(x - 1, y + 1, color); // 2
-            fillTile(x - 1, y, color); // 3
-        }
-
-        if (tetromino == 'L' && rotation == 3) {
-            /**
-             *      2 3
-             *        @
-             *        1
-             */
-            fillTile(x, y, color); // @
-            fillTile(x, y + 1, color); // 1
-            fillTile(x - 1, y - 1, color); // 2
-            fillTile(x, y - 1, color); // 3
-        }
+        tileSize = newSize;
+        setPreferredSize(new Dimension(tileSize * BOARD_WIDTH, tileSize * BOARD_HEIGHT));
+        revalidate();
+        repaint();
 
-        /* O */
-
-        if (tetromino == 'O' && (rotation == 0 || rotation == 1 || rotation == 2 || rotation == 3)) {
-            /**
-             *      2 3
-             *      @ 1
-             */
-            fillTile(x, y, color); // @
-            fillTile(x + 1, y, color); // 1
-            if (y > 0) fillTile(x, y - 1, color); // 2
-            if (y > 0) fillTile(x + 1, y - 1, color); // 3
-        }
-
-        /* S */
-
-        if (tetromino == 'S' && (rotation == 0 || rotation == 2)) {
-            /**
-             *        2 3
-             *      1 @
-             */
-            fillTile(x, y, color); // @
-            fillTile(x - 1, y, color); // 1
-            if (y > 0) fillTile(x, y - 1, color); // 2
-            if (y > 0) fillTile(x + 1, y - 1, color); // 3
-        }
+        // without scroll bars the window grows / shrinks with the board
+        Window window = SwingUtilities.getWindowAncestor(this);
+        if (window != null && !(getParent() instanceof JViewport)) window.pack();
+    }
 
-        if (tetromino == 'S' && (rotation == 1 || rotation == 3)) {
-            /**
-             *      1
-             *      @ 2
-             *        3
-             */
-            fillTile(x, y, color); // @
-            fillTile(x, y - 1, color); // 1
-            fillTile(x + 1, y, color); // 2
-            fillTile(x + 1, y + 1, color); // 3
-        }
+    // ctrl + wheel zooms, the plain wheel scrolls the enclosing JScrollPane
+    private void mouseWheelMoved(MouseWheelEvent e) {
+        if (e.isControlDown()) zoom(-e.getWheelRotation());
+        else if (getParent() != null) getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+    }
 
-        /* T */
-
-        if (tetromino == 'T' && (rotation == 0)) {
-            /**
-             *        3
-             *      1 @ 2
-             *
-             */
-            fillTile(x, y, color); // @
-            fillTile(x - 1, y, color); // 1
-            fillTile(x + 1, y, color); // 2
-            if (y > 0) fillTile(x, y - 1, color); // 3
-        }
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        super.paintComponent(g);
 
-        if (tetromino == 'T' && (rotation == 1)) {
-            /**
-             *      1
-             *      @ 3
-             *      2
-             */
-            fillTile(x, y, color); // @
-            fillTile(x, y - 1, color); // 1
-            fillTile(x, y + 1, color); // 2
-            fillTile(x + 1, y, color); // 3
-        }
+        int tileSize = this.tileSize;
+        painter.paintBackground(g, this, tileSize);
 
-        if (tetromino == 'T' && (rotation == 2)) {
-            /**
-             *      2 @ 1
-             *        3
-             */
-            fillTile(x, y, color); // @
-            fillTile(x + 1, y, color); // 1
-            fillTile(x - 1, y, color); // 2
-            fillTile(x, y + 1, color); // 3
+        long inputNanos;
+        synchronized (frameBuffer) {
+            inputNanos = frameBuffer.takeInputNanos();
+            painter.paintTiles(g, frameBuffer, tileSize);
         }
 
-        if (tetromino == 'T' && (rotation == 3)) {
-            /**
-             *        2
-             *      3 @
-             *        1
-             */
-            fillTile(x, y, color); // @
-            fillTile(x, y + 1, color); // 1
-            fillTile(x, y - 1, color); // 2
-            fillTile(x - 1, y, color); // 3
-        }
+        if (overlayTimer.isRunning()) paintOverlay(g);
 
-        /* Z */
-
-        if (tetromino == 'Z' && (rotation == 0 || rotation == 2)) {
-            /**
-             *      3 2
-             *        @ 1
-             */
-            fillTile(x, y, color);
-            fillTile(x + 1, y, color);
-            if (y > 0) fillTile(x, y - 1, color);
-            if (y > 0) fillTile(x - 1, y - 1, color);
-        }
-
-        if (tetromino == 'Z' && (rotation == 1 || rotation == 3)) {
-            /**
-             *        3
-             *      @ 2
-             *      1
-             */
-            fillTile(x, y, color);
-            fillTile(x, y + 1, color);
-            fillTile(x + 1, y, color);
-            fillTile(x + 1, y - 1, color);
-        }
+        long end = System.nanoTime();
+        metrics.record(Metrics.Stat.PAINT, end - start);
+        if (inputNanos != 0) metrics.record(Metrics.Stat.INPUT_LATENCY, end - inputNanos);
     }
 
-    private Boolean tetrominoWillCollide(int x, int y, char tetromino, String direction, int rotation) {
-        int down = 0, left = 0, right = 0;
-        if (direction.equals("down")) down = 1;
-        if (direction.equals("left")) left = 1;
-        if (direction.equals("right")) right = 1;
-
-        /* I */
-
-        if (tetromino == 'I' && (rotation == 0 || rotation == 2)) {
-            return (x - 1 - left < 0 || x + 2 + right >= BOARD_WIDTH ||
-                    getTile(x - 1 - left, y + down) != DEFAULT_TILE_COLOR ||
-                    getTile(x, y + down) != DEFAULT_TILE_COLOR ||
-                    getTile(x + 1, y + down) != DEFAULT_TILE_COLOR ||
-                    getTile(x + 2 + right, y + down) != DEFAULT_TILE_COLOR);
-        }
+    // FPS, tick jitter, input latency and allocation rate of the last metrics interval, top left
+    private void paintOverlay(Graphics g) {
+        Rectangle bounds = OVERLAY_BOUNDS;
+        if (!bounds.intersects(g.getClipBounds() != null ? g.getClipBounds() : bounds)) return;
+
+        g.setColor(OVERLAY_COLOR);
+        g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        g.setColor(Color.WHITE);
+        g.setFont(OVERLAY_FONT);
+
+        String[] lines = {
+                String.format("FPS %5.1f   ticks/s %5.1f", metrics.getRate(Metrics.Stat.PAINT), metrics.getRate(Metrics.Stat.TICK)),
+                String.format("jitter  p50 %6.0f p99 %6.0f us", metrics.getPercentile(Metrics.Stat.TICK_JITTER, 50), metrics.getPercentile(Metrics.Stat.TICK_JITTER, 99)),
+                String.format("input   p50 %6.0f p99 %6.0f us", metrics.getPercentile(Metrics.Stat.INPUT_LATENCY, 50), metrics.getPercentile(Metrics.Stat.INPUT_LATENCY, 99)),
+                String.format("tick    p99 %6.1f us", metrics.getPercentile(Metrics.Stat.TICK, 99)),
+                String.format("paint   p99 %6.1f us", metrics.getPercentile(Metrics.Stat.PAINT, 99)),
+                String.format("alloc   %8.1f KB/s", metrics.getAllocatedBytesPerSecond() / 1024),
+        };
+
+        FontMetrics font = g.getFontMetrics();
+        for (int line = 0; line < lines.length; line++)
+            g.drawString(lines[line], bounds.x + 6, bounds.y + 4 + font.getAscent() + line * font.getHeight());
+    }
 
-        if (tetromino == 'I' && (rotation == 1 || rotation == 3)) {
-            return (x - left < 0 || x + right >= BOARD_WIDTH ||
-                    y < 1 || y >= BOARD_HEIGHT - 3 ||
-                    (left == 1 || right == 1) && getTile(x - left + right, y) != DEFAULT_TILE_COLOR ||
-                    (left == 1 || right == 1) && getTile(x - left + right, y - 1) != DEFAULT_TILE_COLOR ||
-                    (left == 1 || right == 1) && getTile(x - left + right, y + 1) != DEFAULT_TILE_COLOR ||
-                    getTile(x - left + right, y + 2 + down) != DEFAULT_TILE_COLOR);
-        }
+    // repaints only the tiles the game loop changed, repaint() is safe to call from the loop thread
+    @Override
+    public void tilesChanged(int minX, int minY, int maxX, int maxY) {
+        int tileSize = this.tileSize;
+        int width = (maxX - minX + 1) * tileSize + 1; // + right border
+        int height = (maxY - minY + 1) * tileSize + 1; // + bottom border
+        repaint(minX * tileSize, minY * tileSize, width, height);
+
+        long score = frameBuffer.getScore();
+        int level = frameBuffer.getLevel();
+        if (score != shownScore || level != shownLevel) showScore(score, level);
+    }
 
-        /* J */
+    // the window title follows the score, the frames that change it are few
+    private void showScore(long score, int level) {
+        shownScore = score;
+        shownLevel = level;
+        String text = String.format("%s - %d points, level %d", windowTitle, score, level);
+        EventQueue.invokeLater(() -> {
+            Window window = SwingUtilities.getWindowAncestor(this);
+            if (window instanceof Frame) ((Frame) window).setTitle(text);
+        });
+    }
 
-        if (tetromino == 'J' && rotation == 0) {
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    getTile(x, y + down) != DEFAULT_TILE_COLOR || // @
-                    getTile(x - 1 - left, y + down) != DEFAULT_TILE_COLOR || // 1
-                    getTile(x + 1 + right, y + down) != DEFAULT_TILE_COLOR || // 2
-                    (y > 0 && (left == 1 || right == 1) && getTile(x - 1 - left + right, y - 1) != DEFAULT_TILE_COLOR)); // 3
+    // runs on the loop thread once the loop has stopped, stores the game before telling the player
+    @Override
+    public void gameOver(GameEngine engine) {
+        String leaderboard = "";
+        if (scoresPath != null) {
+            try (ScoreStore scores = ScoreStore.open(scoresPath, LEADERBOARD_SIZE)) {
+                long durationMillis = engine.getTicks() * 1000 / loop.getTickRate();
+                long game = scores.append(engine, engine.getScore(), durationMillis, System.currentTimeMillis());
+                leaderboard = leaderboard(scores, game);
+            } catch (RuntimeException e) {
+                leaderboard = "\n\nCould not save the score: " + e.getMessage();
+            }
         }
 
-        if (tetromino == 'J' && rotation == 1) {
-            /**
-             *      1 2
-             *      @       - rotation center
-             *      3
-             */
-            return (x - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    y < 1 || // hits ceiling?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    ((left == 1 || right == 1) && getTile(x - left + right, y) != DEFAULT_TILE_COLOR) || // block @ hits other blocks on the left / right?
-                    (left == 1 && getTile(x - left, y - 1) != DEFAULT_TILE_COLOR) || // block 1 hits other block on the left?
-                    getTile(x + 1 + right, y - 1 + down) != DEFAULT_TILE_COLOR || // block 2 hits other blocks on the right / bottom?
-                    getTile(x - left + right, y + 1 + down) != DEFAULT_TILE_COLOR); // block 3 hits other blocks on the left / right / bottom?
-        }
+        GameState state = engine.getState();
+        String message = String.format("%n%nScore %d at level %d, %d lines", engine.getScore(), engine.getLevel(), engine.getLinesCleared()) + leaderboard;
+        EventQueue.invokeLater(() -> {
+            // You won!
+            if (state == GameState.WON)
+                JOptionPane.showMessageDialog(frame, "You won!" + message, "Congratulations", JOptionPane.INFORMATION_MESSAGE);
 
-        if (tetromino == 'J' && rotation == 2) {
-            /**
-             *  rotation center
-             *        v
-             *
-             *      3 @ 1
-             *          2
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    getTile(x, y + down) != DEFAULT_TILE_COLOR || // block @ hits other block on the bottom?
-                    (right == 1 && getTile(x + 1 + right, y) != DEFAULT_TILE_COLOR) || // block 1 hits other block on the right?
-                    getTile(x + 1 - left + right, y + 1 + down) != DEFAULT_TILE_COLOR || // block 2 hits other blocks on the left / right / bottom?
-                    getTile(x - 1 - left, y + down) != DEFAULT_TILE_COLOR); // block 3 hits other blocks on the left / bottom?
-        }
+            // You lost!
+            if (state == GameState.LOST)
+                JOptionPane.showMessageDialog(frame, "You lost!" + message, "Game Over", JOptionPane.INFORMATION_MESSAGE);
 
-        if (tetromino == 'J' && rotation == 3) {
-            /**
-             *        3
-             *        @
-             *      2 1
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    y < 1 || // hits ceiling?
-                    ((left == 1 || right == 1) && getTile(x - left + right, y) != DEFAULT_TILE_COLOR) || // block @ hits other blocks on the left / right?
-                    getTile(x + right, y + 1 + down) != DEFAULT_TILE_COLOR || // block 1 hits other block on the left / bottom?
-                    getTile(x - 1 - left, y + 1 + down) != DEFAULT_TILE_COLOR || // block 2 hits other blocks on the left / bottom?
-                    ((left == 1 || right == 1) && getTile(x - left + right, y - 1) != DEFAULT_TILE_COLOR)); // block 3 hits other blocks on the left / right?
-        }
-
-        /* L */
-
-        if (tetromino == 'L' && rotation == 0) {
-            /**
-             *          2
-             *      1 @ 3
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    getTile(x, y + down) != DEFAULT_TILE_COLOR || // block @ hits other block on the bottom?
-                    getTile(x - 1 - left, y + down) != DEFAULT_TILE_COLOR || // block 1 hits other blocks on the left / bottom?
-                    (y > 0 && (left == 1 || right == 1) && getTile(x + 1 - left + right, y - 1) != DEFAULT_TILE_COLOR) || // block 2 hits other block on the left / right?
-                    getTile(x + 1 + right, y + down) != DEFAULT_TILE_COLOR); // block 3 hits other blocks on the right / bottom?
-        }
+            System.exit(0);
+        });
+    }
 
-        if (tetromino == 'L' && rotation == 1) {
-            /**
-             *      1
-             *      @
-             *      3 2
-             */
-            return (x - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    y < 1 || // hits ceiling?
-                    ((left == 1 || right == 1) && getTile(x - left + right, y) != DEFAULT_TILE_COLOR) || // block @ hits other blocks on the left / right?
-                    ((left == 1 || right == 1) && getTile(x - left + right, y - 1) != DEFAULT_TILE_COLOR) || // block 1 hits other blocks on the left / right?
-                    getTile(x + 1 + right, y + 1 + down) != DEFAULT_TILE_COLOR || // block 2 hits other blocks on the right / bottom?
-                    getTile(x - left, y + 1 + down) != DEFAULT_TILE_COLOR); // block 3 hits other blocks on the left / bottom?
-        }
+    // title of the window while the game runs, before the score and level
+    public void setWindowTitle(String windowTitle) {
+        this.windowTitle = windowTitle;
+    }
 
-        if (tetromino == 'L' && rotation == 2) {
-            /**
-             *      3 @ 1
-             *      2
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    getTile(x, y + down) != DEFAULT_TILE_COLOR || // block @ hits other block on the bottom?
-                    getTile(x + 1 + right, y + down) != DEFAULT_TILE_COLOR || // block 1 hits other blocks on the right / bottom?
-                    getTile(x - 1 - left + right, y + 1 + down) != DEFAULT_TILE_COLOR || // block 2 hits other blocks on the left / right / bottom?
-                    (left == 1 && getTile(x - 1 - left, y) != DEFAULT_TILE_COLOR)); // block 3 hits other block on the left?
-        }
+    // where finished games are stored, null to not store them (e.g. when watching a replay)
+    public void setScoresPath(Path scoresPath) {
+        this.scoresPath = scoresPath;
+    }
 
-        if (tetromino == 'L' && rotation == 3) {
-            /**
-             *      2 3
-             *        @
-             *        1
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    y < 1 || // hits ceiling?
-                    ((left == 1 || right == 1) && getTile(x - left + right, y) != DEFAULT_TILE_COLOR) || // block @ hits other blocks on the left / right?
-                    getTile(x - left + right, y + 1 + down) != DEFAULT_TILE_COLOR || // block 1 hits other blocks on the left / right / bottom?
-                    getTile(x - 1 - left, y - 1 + down) != DEFAULT_TILE_COLOR || // block 2 hits other blocks on the left / bottom?
-                    (right == 1 && getTile(x + right, y - 1) != DEFAULT_TILE_COLOR)); // block 3 hits other block on the right?
+    private static String leaderboard(ScoreStore scores, long game) {
+        StringBuilder text = new StringBuilder("\n\nBest of ").append(scores.size()).append(" games:");
+        for (int rank = 0; rank < scores.getTopSize(); rank++) {
+            long index = scores.getTop(rank);
+            text.append(String.format("%n%2d. %8d  %6d lines  %5d pieces  %4d s%s", rank + 1, scores.getScore(index), scores.getLines(index),
+                    scores.getPieces(index), scores.getDuration(index) / 1000, index == game ? "  <- this game" : ""));
         }
+        return text.toString();
+    }
 
-        /* O */
-
-        if (tetromino == 'O') {
-            return (x - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    getTile(x - left, y + down) != DEFAULT_TILE_COLOR || // @
-                    getTile(x + 1 + right, y + down) != DEFAULT_TILE_COLOR || // 1
-                    (y > 0 && left == 1 && getTile(x - left, y - 1) != DEFAULT_TILE_COLOR) || // 2
-                    (y > 0 && right == 1 && getTile(x + 1 + right, y - 1) != DEFAULT_TILE_COLOR)); // 3
-        }
+    @Override
+    public void keyPressed(KeyEvent e) {
+        long start = System.nanoTime();
+        char key = e.getKeyChar();
 
-        /* S */
-
-        if (tetromino == 'S' && (rotation == 0 || rotation == 2)) {
-            /**
-             *        2 3
-             *      1 @
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    getTile(x + right, y + down) != DEFAULT_TILE_COLOR || // @
-                    getTile(x - 1 - left, y + down) != DEFAULT_TILE_COLOR || // 1
-                    (y > 0 && left == 1 && getTile(x - left, y - 1) != DEFAULT_TILE_COLOR) || // 2
-                    (y > 0 && right == 1 && getTile(x + 1 + right, y - 1) != DEFAULT_TILE_COLOR)); // 3
+        // play
+        if (!hasStarted && (key == 'p' || key == 'з')) {
+            start();
         }
 
-        if (tetromino == 'S' && (rotation == 1 || rotation == 3)) {
-            /**
-             *        1
-             *      2 @
-             *      3
-             */
-            return (x - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    y < 1 || // hits ceiling?
-                    getTile(x - left, y + down) != DEFAULT_TILE_COLOR || // block @ hits other block on the left / bottom?
-                    (left == 1 || right == 1) && getTile(x - left + right, y - 1) != DEFAULT_TILE_COLOR || // block 1 hits other blocks on the left / right?
-                    (left == 1 && getTile(x + 1 + right, y) != DEFAULT_TILE_COLOR) || // block 2 hits other block on the right?
-                    getTile(x + 1 + right - left, y + 1 + down) != DEFAULT_TILE_COLOR); // block 3 hits other blocks on the left / right / bottom?
-        }
+        // zoom in / out
+        if (key == '+' || key == '=') zoom(1);
+        if (key == '-') zoom(-1);
 
-        /* T */
-
-        if (tetromino == 'T' && rotation == 0) {
-            /**
-             *        3
-             *      1 @ 2
-             *
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    getTile(x, y + down) != DEFAULT_TILE_COLOR || // @
-                    getTile(x - 1 - left, y + down) != DEFAULT_TILE_COLOR || // 1
-                    getTile(x + 1 + right, y + down) != DEFAULT_TILE_COLOR || // 2
-                    (y > 0 && (left == 1 || right == 1) && getTile(x - left + right, y - 1) != DEFAULT_TILE_COLOR)); // 3
-        }
+        if (!hasStarted) return;
 
-        if (tetromino == 'T' && rotation == 1) {
-            /**
-             *      1
-             *      @ 3
-             *      2
-             */
-            return (x - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    y < 1 || // hits ceiling?
-                    (left == 1 && getTile(x - left, y) != DEFAULT_TILE_COLOR) || // block @ hits other block on the left?
-                    (left == 1 || right == 1) && getTile(x - left + right, y - 1) != DEFAULT_TILE_COLOR || // block 1 hits other blocks on the left / right?
-                    getTile(x - left + right, y + 1 + down) != DEFAULT_TILE_COLOR || // block 2 hits other blocks on the left / right / bottom?
-                    getTile(x + 1 + right, y + down) != DEFAULT_TILE_COLOR); // block 3 hits other blocks on the right / bottom?
-        }
+        // held keys repeat through the loop's InputHandler, the operating system's key repeat is ignored;
+        // a rotation or hard drop is one per key press, the handler drops the repeats of a key that is still down
+        Input held = keyInput(key);
+        if (held != null) loop.press(held);
 
-        if (tetromino == 'T' && rotation == 2) {
-            /**
-             *      2 @ 1
-             *        3
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    getTile(x + 1 + right, y + down) != DEFAULT_TILE_COLOR || // block 1 hits other block on the right / bottom?
-                    getTile(x - 1 - left, y + down) != DEFAULT_TILE_COLOR || // block 2 hits other block on the left / bottom?
-                    getTile(x - left + right, y + 1 + down) != DEFAULT_TILE_COLOR); // block 3 hits other blocks on the left / right / bottom?
-        }
+        // bot on / off
+        if (key == 'b' || key == 'и') loop.setPolicy(loop.getPolicy() == null ? new BotPolicy(BOARD_WIDTH, BOARD_HEIGHT) : null);
 
-        if (tetromino == 'T' && rotation == 3) {
-            /**
-             *        2
-             *      3 @
-             *        1
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    y < 1 || // hits ceiling?
-                    (right == 1 && getTile(x + right, y) != DEFAULT_TILE_COLOR) || // block @ hits other block on the right?
-                    getTile(x - left + right, y + 1 + down) != DEFAULT_TILE_COLOR || // block 1 hits other blocks on the left / right / bottom?
-                    (left == 1 || right == 1) && getTile(x - left + right, y - 1) != DEFAULT_TILE_COLOR || // block 2 hits other blocks on the left / right?
-                    getTile(x - 1 - left, y + down) != DEFAULT_TILE_COLOR); // block 3 hits other blocks on the left / bottom?
-        }
+        // metrics overlay on / off
+        if (key == 'm' || key == 'ь') toggleOverlay();
 
-        /* Z */
-
-        if (tetromino == 'Z' && (rotation == 0 || rotation == 2)) {
-            /**
-             *      3 2
-             *        @ 1
-             */
-            return (x - 1 - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    getTile(x - left, y + down) != DEFAULT_TILE_COLOR || // @
-                    getTile(x + 1 + right, y + down) != DEFAULT_TILE_COLOR || // 1
-                    (y > 0 && right == 1 && getTile(x + right, y - 1) != DEFAULT_TILE_COLOR) || // 2
-                    (y > 0 && getTile(x - 1 - left, y - 1 + down) != DEFAULT_TILE_COLOR)); // 3
-        }
+        // save the game, java Tetris --resume goes on from here
+        if (key == 'o' || key == 'щ') saveGame();
 
-        if (tetromino == 'Z' && (rotation == 1 || rotation == 3)) {
-            /**
-             *        3
-             *      @ 2
-             *      1
-             */
-            return (x - left < 0 || // hits left wall?
-                    x + 1 + right >= BOARD_WIDTH || // hits right wall?
-                    y >= BOARD_HEIGHT - 2 || // hits floor?
-                    y < 1 || // hits ceiling?
-                    (left == 1 && getTile(x - left, y) != DEFAULT_TILE_COLOR) || // block @ hits other block on the left?
-                    getTile(x - left + right, y + 1 + down) != DEFAULT_TILE_COLOR || // block 1 hits other blocks on the left / right / bottom?
-                    getTile(x + 1 + right, y + down) != DEFAULT_TILE_COLOR || // block 2 hits other block on the right / bottom?
-                    (left == 1 || right == 1) && getTile(x + 1 - left + right, y - 1) != DEFAULT_TILE_COLOR); // block 3 hits other blocks on the left / right?
-        }
+        // a second back in time
+        if (key == 'r' || key == 'к') rewind(TICK_RATE);
 
-        return false;
+        metrics.record(Metrics.Stat.KEY_PRESSED, System.nanoTime() - start);
     }
 
-    private void fillTile(int x, int y, Color color) {
-        boardGrid[y][x] = color;
+    private void saveGame() {
+        loop.saveSnapshot(SAVED_GAME_PATH).whenComplete((ignored, e) -> {
+            if (e != null) EventQueue.invokeLater(() -> JOptionPane.showMessageDialog(frame,
+                    "Could not save the game: " + e.getMessage(), "Save", JOptionPane.ERROR_MESSAGE));
+        });
     }
 
-    private Color getTile(int x, int y) {
-        return boardGrid[y][x];
+    private void rewind(int ticks) {
+        loop.rewind(ticks).whenComplete((ignored, e) -> {
+            if (e != null) EventQueue.invokeLater(() -> JOptionPane.showMessageDialog(frame,
+                    "Could not rewind the game: " + e.getMessage(), "Rewind", JOptionPane.ERROR_MESSAGE));
+        });
     }
 
-    @Override
-    public void keyPressed(KeyEvent e) {
-        // play
-        if (!hasStarted && (e.getKeyChar() == 'p' || e.getKeyChar() == 'з')) {
-            hasStarted = true;
-            init();
-        }
-
-        // left
-        if (hasStarted && e.getKeyChar() == 'a' || e.getKeyChar() == 'ф') {
-            fillTetromino(xPos, yPos, DEFAULT_TILE_COLOR, currentTetromino, currentRotation); // remove previous tetromino
-            if (!tetrominoWillCollide(xPos, yPos, currentTetromino, "left", currentRotation)) // is aside from wall and other tetrominos
-                xPos--; // decrement x position
-            fillTetromino(xPos, yPos, ACTIVE_TILE_COLOR, currentTetromino, currentRotation); // fill current tetromino
+    private void toggleOverlay() {
+        if (overlayTimer.isRunning()) {
+            overlayTimer.stop();
+        } else {
+            metrics.sample();
+            overlayTimer.start();
         }
-
-        // right
-        if (hasStarted && e.getKeyChar() == 'd' || e.getKeyChar() == 'в') {
-            fillTetromino(xPos, yPos, DEFAULT_TILE_COLOR, currentTetromino, currentRotation); // remove previous tetromino
-            if (!tetrominoWillCollide(xPos, yPos, currentTetromino, "right", currentRotation)) //  is aside from wall and other tetrominos
-                xPos++; // increment x position
-            fillTetromino(xPos, yPos, ACTIVE_TILE_COLOR, currentTetromino, currentRotation); // fill current tetromino
-        }
-
-        // down
-        if (hasStarted && e.getKeyChar() == 's' || e.getKeyChar() == 'ы' || e.getKeyChar() == 'і') {
-            fillTetromino(xPos, yPos, DEFAULT_TILE_COLOR, currentTetromino, currentRotation); // remove previous tetromino
-            if (yPos < BOARD_HEIGHT - 1 && !tetrominoWillCollide(xPos, yPos, currentTetromino, "down", currentRotation)) // is above floor level and other tetrominos
-                yPos++; // increment y position
-            fillTetromino(xPos, yPos, ACTIVE_TILE_COLOR, currentTetromino, currentRotation); // fill current tetromino
-        }
-
-        // rotate
-        if (hasStarted && e.getKeyChar() == ' ') {
-            fillTetromino(xPos, yPos, DEFAULT_TILE_COLOR, currentTetromino, currentRotation); // remove previous tetromino
-
-            int testRotation = currentRotation + 1;
-            if (testRotation > 3) testRotation = 0;
-
-            if (!tetrominoWillCollide(xPos, yPos, currentTetromino, "down", testRotation)) {
-                currentRotation = testRotation;
-            }
-
-            fillTetromino(xPos, yPos, ACTIVE_TILE_COLOR, currentTetromino, currentRotation); // fill current tetromino
-        }
-
-        repaint(); // Redrawing the board
+        repaint(OVERLAY_BOUNDS);
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
+        Input held = keyInput(e.getKeyChar());
+        if (held != null) loop.release(held);
+    }
+
+    // the input of a key pressed and released through the InputHandler, null for other keys
+    private static Input keyInput(char key) {
+        if (key == 'a' || key == 'ф') return Input.LEFT;
+        if (key == 'd' || key == 'в') return Input.RIGHT;
+        if (key == 's' || key == 'ы' || key == 'і') return Input.DOWN;
+        if (key == ' ') return Input.ROTATE;
+        if (key == 'w' || key == 'ц') return Input.HARD_DROP;
+        return null;
     }
 
     @Override
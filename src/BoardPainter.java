@@ -0,0 +1,119 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Paints the FrameBuffers of boards of one size with one TileAtlas, e.g. a Board's own, or
+ * every seat of a Tournament with the same sprites. Only the tiles inside the clip are drawn:
+ *
+ *      background      empty tiles, blitted up to BACKGROUND_TILES x BACKGROUND_TILES at a time
+ *      stack           the filled tiles, found a word of a row at a time
+ *      ghost, active   the active tetromino where it would land and where it is
+ *
+ * Used from the event dispatch thread only.
+ */
+public class BoardPainter {
+    private static final int BACKGROUND_TILES = 32; // the background is at most this many tiles wide and high
+
+    private final int width;
+    private final int height;
+    private final Color borderColor;
+    private final Rectangle clip = new Rectangle(); // of the current paint
+    private TileAtlas atlas; // one sprite per palette color
+    private BufferedImage background; // empty tiles with their grid, repeated over the board
+    // tiles inside the clip of the current paint, inclusive
+    private int minCol, minRow, maxCol, maxRow;
+
+    public BoardPainter(int width, int height, Color borderColor) {
+        this.width = width;
+        this.height = height;
+        this.borderColor = borderColor;
+    }
+
+    // empty tiles inside the clip, call before paintTiles() and outside the FrameBuffer's monitor
+    public void paintBackground(Graphics g, Component view, int tileSize) {
+        clipTiles(g, tileSize);
+        ensureLayers(view, tileSize);
+
+        int cols = background.getWidth() / tileSize; // tiles per background
+        int rows = background.getHeight() / tileSize;
+
+        for (int row = minRow / rows * rows; row <= maxRow; row += rows) {
+            for (int col = minCol / cols * cols; col <= maxCol; col += cols) {
+                int width = Math.min(cols, this.width - col) * tileSize + 1;
+                int height = Math.min(rows, this.height - row) * tileSize + 1;
+                int x = col * tileSize, y = row * tileSize;
+                g.drawImage(background, x, y, x + width, y + height, 0, 0, width, height, null);
+            }
+        }
+    }
+
+    // the stack, ghost and active tetromino inside the clip, only while holding the FrameBuffer's monitor
+    public void paintTiles(Graphics g, FrameBuffer frameBuffer, int tileSize) {
+        BitBoard boardGrid = frameBuffer.getBoard();
+
+        for (int row = minRow; row <= maxRow && minCol <= maxCol; row++) {
+            for (int word = minCol >>> 6; word <= maxCol >>> 6; word++) {
+                long bits = boardGrid.getRowWord(row, word);
+                if (word == minCol >>> 6) bits &= -1L << minCol;
+                if (word == maxCol >>> 6) bits &= -1L >>> (63 - (maxCol & 63));
+
+                for (; bits != 0; bits &= bits - 1) {
+                    int col = word * 64 + Long.numberOfTrailingZeros(bits);
+                    atlas.drawTile(g, boardGrid.getColor(col, row), col * tileSize, row * tileSize);
+                }
+            }
+        }
+
+        if (frameBuffer.getState() == GameState.RUNNING) {
+            paintGhost(g, frameBuffer, tileSize);
+            paintActive(g, frameBuffer, tileSize);
+        }
+    }
+
+    // outline of the active tetromino where it would land, under the active tetromino's own tiles
+    private void paintGhost(Graphics g, FrameBuffer frameBuffer, int tileSize) {
+        if (tileSize < 6) return;
+
+        BitBoard boardGrid = frameBuffer.getBoard();
+        g.setColor(Utils.PALETTE[frameBuffer.getActiveColor()]);
+        int shape = Tetromino.shape(frameBuffer.getTetromino(), frameBuffer.getRotation());
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            int col = frameBuffer.getX() + Tetromino.cellX(shape, tile);
+            int row = frameBuffer.getGhostY() + Tetromino.cellY(shape, tile);
+
+            if (row < minRow || row > maxRow || col < minCol || col > maxCol || boardGrid.isOccupied(col, row)) continue;
+            g.drawRect(col * tileSize + 2, row * tileSize + 2, tileSize - 4, tileSize - 4);
+        }
+    }
+
+    // the active tetromino is not on the board, it is drawn over the stack; tiles above the board are hidden
+    private void paintActive(Graphics g, FrameBuffer frameBuffer, int tileSize) {
+        int shape = Tetromino.shape(frameBuffer.getTetromino(), frameBuffer.getRotation());
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            int col = frameBuffer.getX() + Tetromino.cellX(shape, tile);
+            int row = frameBuffer.getY() + Tetromino.cellY(shape, tile);
+
+            if (row < minRow || row > maxRow || col < minCol || col > maxCol) continue;
+            atlas.drawTile(g, frameBuffer.getActiveColor(), col * tileSize, row * tileSize);
+        }
+    }
+
+    // a tile's border reaches one pixel into its right / bottom neighbour
+    private void clipTiles(Graphics g, int tileSize) {
+        clip.setBounds(0, 0, width * tileSize + 1, height * tileSize + 1); // left as it is without a clip
+        g.getClipBounds(clip);
+        minCol = Math.max(0, (clip.x - 1) / tileSize);
+        minRow = Math.max(0, (clip.y - 1) / tileSize);
+        maxCol = Math.min(width - 1, (clip.x + clip.width) / tileSize);
+        maxRow = Math.min(height - 1, (clip.y + clip.height) / tileSize);
+    }
+
+    // (re)builds the cached layers on first paint and after the tile size or palette changed, in the view's pixel format
+    private void ensureLayers(Component view, int tileSize) {
+        if (atlas == null || !atlas.matches(Utils.PALETTE, tileSize)) {
+            GraphicsConfiguration config = view.getGraphicsConfiguration();
+            atlas = new TileAtlas(config, Utils.PALETTE, borderColor, tileSize);
+            background = atlas.createBackground(config, Math.min(width, BACKGROUND_TILES), Math.min(height, BACKGROUND_TILES));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// autoplayer: steers every new tetromino to the placement PlacementSearch picked for it
+public class BotPolicy implements Policy {
+    private final PlacementSearch search;
+    private long searchedPiece = -1; // engine.getPiecesPlaced() when the target was searched
+    private boolean hasTarget = false;
+    private int targetRotation;
+    private int targetX;
+    private long lastTick = -1; // the tick it last pressed a key for
+
+    public BotPolicy(int width, int height) {
+        search = new PlacementSearch(width, height);
+    }
+
+    @Override
+    public Input next(GameEngine engine) {
+        if (engine.getPiecesPlaced() != searchedPiece) { // a new tetromino
+            searchedPiece = engine.getPiecesPlaced();
+            hasTarget = search.search(engine);
+            targetRotation = search.getBestRotation();
+            targetX = search.getBestX();
+        }
+
+        if (!hasTarget || engine.getTicks() == lastTick) return null; // one key per tick
+        lastTick = engine.getTicks();
+
+        if (engine.getRotation() != targetRotation) return Input.ROTATE;
+        if (engine.getX() < targetX) return Input.RIGHT;
+        if (engine.getX() > targetX) return Input.LEFT;
+        return Input.HARD_DROP;
+    }
+}
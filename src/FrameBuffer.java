@@ -0,0 +1,91 @@
+/**
+ * Copy of the engine's board and active tetromino published by the game loop for the view.
+ * The loop writes it and the view paints from it while holding its monitor, so a paint never
+ * sees half a tick. The board is the locked stack; the view draws the active tetromino and its
+ * ghost on top of it.
+ */
+public class FrameBuffer {
+    private final BitBoard board;
+    private GameState state = GameState.RUNNING;
+    private long inputNanos = 0; // submit time of the oldest input not painted yet, 0 if there is none
+    private int tetromino; // pose of the active tetromino
+    private int rotation;
+    private int x;
+    private int y;
+    private int ghostY; // the same pose dropped onto the stack, see GameEngine.getGhostY()
+    private byte activeColor;
+    private long score;
+    private int level;
+
+    public FrameBuffer(int width, int height) {
+        board = new BitBoard(width, height);
+    }
+
+    // copies the rows of the stack the engine changed since its last clearDirty(), the active tetromino is a pose
+    public synchronized void publish(GameEngine engine) {
+        if (engine.isStackDirty()) board.copyRowsFrom(engine.getBoard(), engine.getStackDirtyMinY(), engine.getStackDirtyMaxY());
+        state = engine.getState();
+        tetromino = engine.getTetromino();
+        rotation = engine.getRotation();
+        x = engine.getX();
+        y = engine.getY();
+        ghostY = engine.getGhostY();
+        activeColor = engine.getActiveColor();
+        score = engine.getScore();
+        level = engine.getLevel();
+    }
+
+    // the frame being published shows an input submitted at nanos (System.nanoTime())
+    public synchronized void inputApplied(long nanos) {
+        if (inputNanos == 0) inputNanos = nanos;
+    }
+
+    // only while holding this FrameBuffer's monitor: submit time of the oldest input the next paint shows, 0 if none
+    public long takeInputNanos() {
+        long nanos = inputNanos;
+        inputNanos = 0;
+        return nanos;
+    }
+
+    // only while holding this FrameBuffer's monitor
+    public BitBoard getBoard() {
+        return board;
+    }
+
+    // the active tetromino's getters too only while holding this FrameBuffer's monitor
+    public int getTetromino() {
+        return tetromino;
+    }
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getGhostY() {
+        return ghostY;
+    }
+
+    public byte getActiveColor() {
+        return activeColor;
+    }
+
+    public synchronized GameState getState() {
+        return state;
+    }
+
+    public synchronized long getScore() {
+        return score;
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+}
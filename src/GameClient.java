@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * Scripted bot clients of a GameServer, any number of connections on one thread and Selector.
+ * Every connection keeps a copy of its match's boards from the TICKs it gets (see Protocol) and
+ * plays its own board like the BotPolicy: a PlacementSearch on its copy of the stack for every
+ * new tetromino, then one input at a time towards the placement.
+ *
+ * The copies are checked against every TICK: a running board's active tetromino must fit its
+ * copy, its ghost must be where the copy drops it, and no row of a copy may be full, the server
+ * clears them. getMismatches() counts the boards that failed.
+ *
+ *      java GameClient [host] [port] [clients]
+ */
+public class GameClient implements Runnable {
+    private final Selector selector;
+    private int open; // connections not closed yet
+    // totals of all connections
+    private long games = 0;
+    private long won = 0;
+    private long linesCleared = 0;
+    private long garbageReceived = 0;
+    private long bytesRead = 0;
+    private long boardsChecked = 0;
+    private long mismatches = 0; // boards of a TICK that did not fit the copy of them
+
+    private class Connection {
+        final SocketChannel channel;
+        ByteBuffer in = ByteBuffer.allocate(1 << 12); // grows to the largest frame
+        final ByteBuffer out = ByteBuffer.allocate(1 << 10);
+        SelectionKey key;
+        int you = -1; // player index, -1 until START
+        BitBoard[] boards; // the stacks as the server sent them
+        PlacementSearch search;
+        int tetromino, rotation, x, y; // own active tetromino
+        long lines, pieces;
+        long searchedPieces = -1; // pieces when the target was searched
+        boolean hasTarget;
+        int targetRotation, targetX;
+        boolean isDropping = false; // HARD_DROP sent, nothing more until the next tetromino
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public GameClient(String host, int port, int clients) {
+        try {
+            selector = Selector.open();
+            for (int client = 0; client < clients; client++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                channel.connect(new InetSocketAddress(host, port));
+                open++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not connect to " + host + ":" + port, e);
+        }
+    }
+
+    // plays until the server has ended every connection's match
+    @Override
+    public void run() {
+        try {
+            while (open > 0) {
+                selector.select();
+
+                for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    if (!key.isValid()) continue;
+
+                    try {
+                        if (key.isConnectable()) {
+                            connection.channel.finishConnect();
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                        if (key.isValid() && key.isReadable()) read(connection);
+                        if (key.isValid() && key.isWritable()) flush(connection);
+                    } catch (IOException e) {
+                        close(connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public long getBoardsChecked() {
+        return boardsChecked;
+    }
+
+    public long getMismatches() {
+        return mismatches;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public String getSummary() {
+        return String.format("games %d, won %d, lines %d (%.1f/game), garbage received %d lines, %d KB read, %d of %d boards mismatched",
+                games, won, linesCleared, (double) linesCleared / Math.max(1, games), garbageReceived, bytesRead / 1024, mismatches, boardsChecked);
+    }
+
+    private void read(Connection connection) throws IOException {
+        int read = connection.channel.read(connection.in);
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+        bytesRead += read;
+
+        ByteBuffer in = connection.in;
+        in.flip();
+        byte type;
+        boolean isOwnBoardChanged = false;
+        while ((type = Protocol.next(in)) != 0) {
+            int message = in.position();
+
+            switch (type) {
+                case Protocol.START:
+                    connection.you = in.get() & 0xFF;
+                    int players = in.get() & 0xFF;
+                    int width = in.getShort(), height = in.getShort();
+                    connection.boards = new BitBoard[players];
+                    for (int player = 0; player < players; player++) connection.boards[player] = new BitBoard(width, height);
+                    connection.search = new PlacementSearch(width, height);
+                    break;
+                case Protocol.TICK:
+                    isOwnBoardChanged |= readTick(connection, in);
+                    break;
+                case Protocol.GARBAGE:
+                    in.get(); // from
+                    if ((in.get() & 0xFF) == connection.you) garbageReceived += in.get() & 0xFF;
+                    break;
+                case Protocol.OVER:
+                    games++;
+                    linesCleared += connection.lines;
+                    if ((in.get() & 0xFF) == connection.you) won++;
+                    in.position(Protocol.frameEnd(in, message));
+                    close(connection);
+                    return;
+            }
+
+            in.position(Protocol.frameEnd(in, message));
+        }
+        in.compact();
+        if (!in.hasRemaining()) { // a frame larger than the buffer
+            in.flip();
+            connection.in = ByteBuffer.allocate(in.capacity() * 2).put(in);
+        }
+
+        if (isOwnBoardChanged) play(connection);
+    }
+
+    // applies a TICK to the copies of the boards, true if the own board changed
+    private boolean readTick(Connection connection, ByteBuffer in) {
+        in.getLong(); // tick
+        int boards = in.get() & 0xFF;
+        boolean isOwnBoardChanged = false;
+
+        for (int board = 0; board < boards; board++) {
+            int player = in.get() & 0xFF;
+            int state = in.get();
+            int tetromino = in.get(), rotation = in.get();
+            int x = in.getShort(), y = in.getShort();
+            int ghostY = in.getShort();
+            in.get(); // color
+            long lines = in.getInt(), pieces = in.getInt();
+
+            BitBoard grid = connection.boards[player];
+            for (int cells = in.getInt(); cells > 0; cells--) {
+                int cellX = in.getShort(), cellY = in.getShort();
+                grid.set(cellX, cellY, in.get());
+            }
+            if (state == GameState.RUNNING.ordinal()) check(grid, tetromino, rotation, x, y, ghostY);
+
+            if (player == connection.you) {
+                isOwnBoardChanged = true;
+                connection.tetromino = tetromino;
+                connection.rotation = rotation;
+                connection.x = x;
+                connection.y = y;
+                connection.lines = lines;
+                connection.pieces = pieces;
+            }
+        }
+
+        return isOwnBoardChanged;
+    }
+
+    // the pose and ghost of a running board against the copy of its stack
+    private void check(BitBoard grid, int tetromino, int rotation, int x, int y, int ghostY) {
+        boardsChecked++;
+        boolean isFullRow = false;
+        for (int row = 0; row < grid.getHeight(); row++) isFullRow |= grid.isRowFull(row);
+
+        if (isFullRow || grid.collides(tetromino, rotation, x, y) || y + grid.dropDistance(tetromino, rotation, x, y) != ghostY) mismatches++;
+    }
+
+    // one input towards the placement of the current tetromino, as BotPolicy.next()
+    private void play(Connection connection) throws IOException {
+        if (connection.pieces != connection.searchedPieces) { // a new tetromino
+            connection.searchedPieces = connection.pieces;
+            connection.isDropping = false;
+            connection.hasTarget = connection.search.search(connection.boards[connection.you],
+                    connection.tetromino, connection.rotation, connection.x, connection.y);
+            connection.targetRotation = connection.search.getBestRotation();
+            connection.targetX = connection.search.getBestX();
+        }
+
+        if (!connection.hasTarget || connection.isDropping) return;
+
+        Input input;
+        if (connection.rotation != connection.targetRotation) input = Input.ROTATE;
+        else if (connection.x < connection.targetX) input = Input.RIGHT;
+        else if (connection.x > connection.targetX) input = Input.LEFT;
+        else input = Input.HARD_DROP;
+        connection.isDropping = input == Input.HARD_DROP;
+
+        int start = Protocol.begin(connection.out, Protocol.INPUT);
+        connection.out.put((byte) input.ordinal());
+        Protocol.end(connection.out, start);
+        flush(connection);
+    }
+
+    private void flush(Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        out.flip();
+        connection.channel.write(out);
+        out.compact();
+        connection.key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void close(Connection connection) {
+        if (!connection.channel.isOpen()) return;
+
+        open--;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        GameClient client = new GameClient(host, port, clients);
+        client.run();
+        System.out.println(client.getSummary());
+    }
+}
@@ -0,0 +1,1015 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Game rules without any Swing: the board, the active tetromino and the game state.
+ * A view drives it with step() (one gravity tick) and apply(Input) and renders getBoard()
+ * with the active tetromino's pose on top.
+ * The game is fully determined by its seed, randomizer and the inputs applied between steps.
+ *
+ *      board       the locked stack only, written when a tetromino locks or rows are cleared
+ *      active      tetromino, rotation, x, y: a move changes these and nothing else
+ *
+ * Scoring and levels follow Levels. The gravity is gravityRows rows every ticksPerRow ticks, either
+ * fixed (setTicksPerRow()) or following the level's curve (setGravityCurve()); above 1G a tick drops
+ * the active tetromino many rows at once onto its ghost, see fall().
+ *
+ * save() / restore() copy the whole game to and from a ByteBuffer, e.g. to resume it later or to
+ * try moves on a copy of it.
+ *
+ * With a RewindBuffer set, every tick also writes what it changed to the buffer and rewind()
+ * takes the game back tick by tick:
+ *
+ *      LOCK        shape, x, y                 - the tiles were empty before
+ *      CLEAR       its colors, row             - one per removed row, top first
+ *      SPAWN       tetromino                   - its count goes back down
+ *      GARBAGE     the rows pushed off the top
+ *      state       the words of readState() the frame changed, as they were before it, then a
+ *                  two-word mask of which ones; a spawn changes the generators' words
+ */
+public class GameEngine {
+    public static final int SNAPSHOT_MAGIC = 0x54534e50; // "TSNP"
+    public static final int SNAPSHOT_VERSION = 3;
+    public static final int SNAPSHOT_HEADER_BYTES = 248; // the board's cells start 8-byte aligned after it
+    private static final int SNAPSHOT_V1_HEADER_BYTES = 176; // before scoring and levels
+    private static final int SNAPSHOT_V2_HEADER_BYTES = 208; // before the generator state
+    private static final int MAX_SNAPSHOT_SIDE = 4096; // tiles, a corrupt size must not allocate a huge board
+    private static final long MAX_REPLAYED_SPAWNS = 1L << 26; // a second or so of deal(), restoring a version 1 or 2 snapshot
+
+    // events of a RewindBuffer frame
+    private static final int LOCK = 1;
+    private static final int CLEAR = 2;
+    private static final int SPAWN = 3;
+    private static final int GARBAGE = 4;
+    private static final int STATE_WORDS = 33 + Input.values().length; // see readState(), at most 64
+    private static final GameState[] STATES = GameState.values(); // values() copies the array on every call
+    private static final Randomizer[] RANDOMIZERS = Randomizer.values();
+
+    private final int width;
+    private final int height;
+    private long seed;
+    private Randomizer randomizer;
+    private PieceGenerator pieces;
+    private SplitRandom random; // colors and spawn columns
+    private final BitBoard boardGrid; // occupancy bits + palette indexes of the locked tetrominos
+    private BitBoard snapshotBoard; // where restore() checks a snapshot's board before taking it, made on the first one
+    private final int[] clearedRows; // rows removed by the last clearLines
+    private int clearedCount = 0;
+    private byte activeColor;
+    private int currentTetromino;
+    private int currentRotation;
+    private int xPos;
+    private int yPos;
+    private int ghostShape = -1; // pose of the ghost: the active tetromino dropped onto the stack, see updateGhost()
+    private int ghostX;
+    private int ghostY;
+    private GameState state = GameState.RUNNING;
+    private int ticksPerRow = 1; // gravity speed, see tick()
+    private int gravityRows = 1; // rows of gravity every ticksPerRow ticks, more than ticksPerRow above 1G
+    private int gravityTicks = 0; // gravity so far, gravityRows a tick; every ticksPerRow of it is a row
+    private int lockDelay = 0; // ticks a landed tetromino rests before it locks, 0: at the next row of gravity
+    private int restingTicks = 0;
+    private boolean isGravityCurve = false; // the gravity follows the level, see Levels
+    private int startLevel = 1;
+    private int level = 1;
+    private long score = 0;
+    private int combo = -1; // locks in a row that cleared lines, less one
+    private long ticks = 0; // game loop ticks so far
+    private long steps = 0; // gravity steps so far, the length of the game
+    private long piecesPlaced = 0;
+    private long linesCleared = 0;
+    private final int[] tetrominoCounts = new int[Tetromino.COUNT]; // spawned tetrominos by type
+    private final int[] inputCounts = new int[Input.values().length]; // inputs that changed the game by type, as a replay records them
+    private Metrics metrics; // times collision checks and line clears, may be null
+    private RewindBuffer history; // undo log of the ticks, may be null
+    private int[] frameState; // the state words as the frame being written started, see readState()
+    private int[] scratchState;
+    private byte[] rowColors; // a row being written to or read back from the history
+    // bounding box of the tiles changed since the last clearDirty(), empty while max < min
+    private int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+    // rows of the board (the locked stack) among them, a move or the ghost changes none
+    private int stackDirtyMinY, stackDirtyMaxY;
+
+    public GameEngine(int width, int height, long seed, Randomizer randomizer) {
+        if (width < 4 || height < 4) throw new IllegalArgumentException("The board must be at least 4 x 4 tiles, not " + width + " x " + height);
+
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.randomizer = randomizer;
+        seedGenerators();
+
+        boardGrid = new BitBoard(width, height);
+        clearedRows = new int[height];
+        clearDirty();
+        spawn();
+    }
+
+    // one game loop tick: applies gravityRows rows of gravity every ticksPerRow ticks
+    public void tick() {
+        ticks++;
+        gravityTicks += gravityRows;
+        if (gravityTicks >= ticksPerRow) {
+            int rows = gravityTicks / ticksPerRow;
+            gravityTicks -= rows * ticksPerRow;
+            if (rows == 1 && lockDelay == 0) step();
+            else fall(rows);
+        }
+
+        if (history != null) endFrame();
+    }
+
+    // one gravity tick: moves the active tetromino a row down or locks it
+    public void step() {
+        if (isOver()) return;
+
+        steps++;
+        clearedCount = 0;
+
+        // reached limits of floor or other tetrominos
+        if (collides(currentRotation, xPos, yPos + 1)) {
+            lock();
+            if (isOver()) return;
+        }
+
+        moveTo(currentRotation, xPos, yPos + 1);
+    }
+
+    // true if the input moved or rotated the active tetromino
+    public boolean apply(Input input) {
+        if (isOver()) return false;
+
+        int rotation = currentRotation, x = xPos, y = yPos;
+        switch (input) {
+            case LEFT:
+                x--;
+                break;
+            case RIGHT:
+                x++;
+                break;
+            case DOWN:
+                y++;
+                break;
+            case ROTATE:
+                rotation = (currentRotation + 1) % Tetromino.ROTATIONS;
+                break;
+            case HARD_DROP:
+                markDirty(Tetromino.shape(currentTetromino, currentRotation), xPos, yPos); // where it was
+                int distance = boardGrid.dropDistance(currentTetromino, currentRotation, xPos, yPos);
+                yPos += distance;
+                score += (long) Levels.HARD_DROP_POINTS * distance;
+                clearedCount = 0;
+                inputCounts[input.ordinal()]++;
+                lock();
+                return true;
+        }
+
+        if (collides(rotation, x, y)) return false;
+
+        moveTo(rotation, x, y);
+        if (input == Input.DOWN) score += Levels.SOFT_DROP_POINTS;
+        inputCounts[input.ordinal()]++;
+        return true;
+    }
+
+    /**
+     * Pushes the stack up by lines rows of garbage, filled but for one hole column, e.g. the lines
+     * an opponent cleared. The active tetromino is pushed up with it where the stack is in its way;
+     * a stack pushed off the top of the board loses the game.
+     */
+    public void addGarbage(int lines, int hole) {
+        if (isOver() || lines <= 0) return;
+
+        lines = Math.min(lines, height);
+        if (history != null) {
+            for (int row = 0; row < lines; row++) putRow(row);
+            putTag(GARBAGE, lines * rowWords());
+        }
+        boolean isOverflow = boardGrid.shiftUp(lines);
+        for (int row = height - lines; row < height; row++) {
+            for (int x = 0; x < width; x++) {
+                if (x != hole) boardGrid.set(x, row, Utils.GARBAGE);
+            }
+        }
+
+        int stackTop = boardGrid.getTopRow();
+        markDirty(0, stackTop, width - 1, height - 1); // every row of the stack moved
+        markStackDirty(stackTop, height - 1);
+
+        if (isOverflow) {
+            state = GameState.LOST;
+            return;
+        }
+
+        int y = yPos;
+        while (collides(currentRotation, xPos, y)) y--; // above the board only the walls collide
+        moveTo(currentRotation, xPos, y);
+    }
+
+    public static int snapshotBytes(int width, int height) {
+        return snapshotBytes(width, height, SNAPSHOT_VERSION);
+    }
+
+    private static int snapshotBytes(int width, int height, int version) {
+        return snapshotHeaderBytes(version) + 8 * ((width + 63) >>> 6) * height + width * height;
+    }
+
+    private static int snapshotHeaderBytes(int version) {
+        return version == 1 ? SNAPSHOT_V1_HEADER_BYTES : version == 2 ? SNAPSHOT_V2_HEADER_BYTES : SNAPSHOT_HEADER_BYTES;
+    }
+
+    /**
+     * Writes the whole game at the buffer's position, snapshotBytes() bytes in the buffer's byte order:
+     *
+     *      int     SNAPSHOT_MAGIC, SNAPSHOT_VERSION, width, height
+     *      long    seed
+     *      int     randomizer, state                           - ordinals
+     *      int     tetromino, rotation, x, y, active color
+     *      int     ticks per row, gravity ticks, cleared count
+     *      int     cleared rows [Tetromino.TILES]
+     *      long    ticks, steps, pieces placed, lines cleared
+     *      int     tetromino counts [Tetromino.COUNT]          - their sum is the spawns so far
+     *      int     input counts [ScoreStore.INPUT_SLOTS]
+     *      int     gravity rows, lock delay, resting ticks, gravity curve (1 or 0)
+     *      int     start level, level, combo
+     *      long    score
+     *      long    piece seed, piece gamma, color seed, color gamma    - see SplitRandom
+     *      int     piece generator state                       - see PieceGenerator.getState()
+     *      ...     padding up to SNAPSHOT_HEADER_BYTES
+     *      long    board cells, byte board colors              - see BitBoard.writeTo()
+     */
+    public void save(ByteBuffer out) {
+        int start = out.position();
+        out.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(width).putInt(height);
+        out.putLong(seed);
+        out.putInt(randomizer.ordinal()).putInt(state.ordinal());
+        out.putInt(currentTetromino).putInt(currentRotation).putInt(xPos).putInt(yPos).putInt(activeColor);
+        out.putInt(ticksPerRow).putInt(gravityTicks).putInt(clearedCount);
+        for (int row = 0; row < Tetromino.TILES; row++) out.putInt(row < clearedCount ? clearedRows[row] : 0);
+        out.putLong(ticks).putLong(steps).putLong(piecesPlaced).putLong(linesCleared);
+        for (int count : tetrominoCounts) out.putInt(count);
+        for (int slot = 0; slot < ScoreStore.INPUT_SLOTS; slot++) out.putInt(slot < inputCounts.length ? inputCounts[slot] : 0);
+        out.putInt(gravityRows).putInt(lockDelay).putInt(restingTicks).putInt(isGravityCurve ? 1 : 0);
+        out.putInt(startLevel).putInt(level).putInt(combo);
+        out.putLong(score);
+        SplitRandom pieceRandom = pieces.getRandom();
+        out.putLong(pieceRandom.getSeed()).putLong(pieceRandom.getGamma()).putLong(random.getSeed()).putLong(random.getGamma());
+        out.putInt(pieces.getState());
+
+        while (out.position() < start + SNAPSHOT_HEADER_BYTES) out.put((byte) 0);
+        boardGrid.writeTo(out);
+    }
+
+    // a new engine of the snapshot's size at the buffer's position, see save()
+    public static GameEngine load(ByteBuffer in) {
+        int start = in.position();
+        checkSnapshot(in);
+        int width = in.getInt(start + 8), height = in.getInt(start + 12);
+        GameEngine engine = new GameEngine(width, height, in.getLong(start + 16), RANDOMIZERS[in.getInt(start + 24)]);
+        engine.restore(in);
+        return engine;
+    }
+
+    // the version of the snapshot at the buffer's position, once its header makes sense; does not move the position
+    private static int checkSnapshot(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < SNAPSHOT_V1_HEADER_BYTES) throw new IllegalArgumentException("A game snapshot has at least " + SNAPSHOT_V1_HEADER_BYTES + " bytes, not " + in.remaining());
+        if (in.getInt(start) != SNAPSHOT_MAGIC) throw new IllegalArgumentException("Not a game snapshot");
+        int version = in.getInt(start + 4);
+        if (version < 1 || version > SNAPSHOT_VERSION) throw new IllegalArgumentException("Unsupported game snapshot version " + version);
+
+        int width = in.getInt(start + 8), height = in.getInt(start + 12);
+        if (width < 4 || height < 4 || width > MAX_SNAPSHOT_SIDE || height > MAX_SNAPSHOT_SIDE)
+            throw new IllegalArgumentException("A game snapshot of a " + width + " x " + height + " board, the sides are 4 to " + MAX_SNAPSHOT_SIDE + " tiles");
+        int bytes = snapshotBytes(width, height, version);
+        if (in.remaining() < bytes) throw new IllegalArgumentException("A " + width + " x " + height + " game snapshot has " + bytes + " bytes, not " + in.remaining());
+
+        int randomizer = in.getInt(start + 24), state = in.getInt(start + 28);
+        if (randomizer < 0 || randomizer >= RANDOMIZERS.length) throw new IllegalArgumentException("Unknown randomizer " + randomizer + " in a game snapshot");
+        if (state < 0 || state >= STATES.length) throw new IllegalArgumentException("Unknown game state " + state + " in a game snapshot");
+
+        int tetromino = in.getInt(start + 32), rotation = in.getInt(start + 36);
+        if (tetromino < 0 || tetromino >= Tetromino.COUNT || rotation < 0 || rotation >= Tetromino.ROTATIONS)
+            throw new IllegalArgumentException("Unknown tetromino " + tetromino + " rotation " + rotation + " in a game snapshot");
+        int x = in.getInt(start + 40), y = in.getInt(start + 44), color = in.getInt(start + 48);
+        int shape = Tetromino.shape(tetromino, rotation);
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            int tileX = x + Tetromino.cellX(shape, tile), tileY = y + Tetromino.cellY(shape, tile);
+            if (tileX < 0 || tileX >= width || tileY < -height || tileY >= height) // above the board, as far as garbage can push it
+                throw new IllegalArgumentException("A " + Tetromino.NAMES.charAt(tetromino) + " at (" + x + ", " + y + ") is out of the board in a game snapshot");
+        }
+        if (color < 1 || color > Utils.TETROMINO_COLORS) throw new IllegalArgumentException("Active color " + color + " in a game snapshot");
+
+        int ticksPerRow = in.getInt(start + 52), clearedCount = in.getInt(start + 60);
+        if (ticksPerRow < 1 || clearedCount < 0 || clearedCount > Tetromino.TILES)
+            throw new IllegalArgumentException("Bad gravity or line clear in a game snapshot: " + ticksPerRow + " ticks per row, " + clearedCount + " lines");
+        for (int row = 0; row < clearedCount; row++) {
+            int clearedRow = in.getInt(start + 64 + 4 * row);
+            if (clearedRow < 0 || clearedRow >= height) throw new IllegalArgumentException("Cleared row " + clearedRow + " in a game snapshot");
+        }
+
+        // every spawn so far was placed but the active one; versions 1 and 2 draw them all again
+        long piecesPlaced = in.getLong(start + 96), spawns = 0;
+        for (int index = 0; index < Tetromino.COUNT; index++) {
+            int count = in.getInt(start + 112 + 4 * index);
+            if (count < 0) throw new IllegalArgumentException("Tetromino count " + count + " in a game snapshot");
+            spawns += count;
+        }
+        if (piecesPlaced < 0 || spawns > piecesPlaced + 1 || (version < 3 && spawns > MAX_REPLAYED_SPAWNS))
+            throw new IllegalArgumentException(spawns + " spawns and " + piecesPlaced + " pieces placed in a version " + version + " game snapshot");
+
+        if (version >= 3) {
+            long pieceGamma = in.getLong(start + 216), colorGamma = in.getLong(start + 232);
+            int pieceState = in.getInt(start + 240);
+            if ((pieceGamma & 1) == 0 || (colorGamma & 1) == 0) throw new IllegalArgumentException("Even generator gamma in a game snapshot");
+            if (RANDOMIZERS[randomizer] == Randomizer.BAG ? !BagGenerator.isState(pieceState) : pieceState != 0)
+                throw new IllegalArgumentException("Piece generator state " + Integer.toHexString(pieceState) + " in a game snapshot");
+        }
+
+        return version;
+    }
+
+    /**
+     * Makes this engine the game saved at the buffer's position, see save(); the snapshot must be of
+     * a board of this engine's size. The whole board is dirty afterwards, the metrics stay.
+     * A version 1 snapshot, from before scoring, restores with no score and fixed gravity. Versions
+     * 1 and 2 have no generator state, they are seeded again and every spawn so far is drawn again.
+     * The whole snapshot is checked before anything changes: one that does not make sense throws
+     * IllegalArgumentException and leaves the engine as it was.
+     */
+    public void restore(ByteBuffer in) {
+        int start = in.position();
+        int version = checkSnapshot(in);
+        in.position(start + 8);
+        int snapshotWidth = in.getInt(), snapshotHeight = in.getInt();
+        if (snapshotWidth != width || snapshotHeight != height)
+            throw new IllegalArgumentException("A " + snapshotWidth + " x " + snapshotHeight + " snapshot does not fit a " + width + " x " + height + " board");
+
+        // the board first, on arrays: through the buffer a byte at a time, the check would cost more than the restore
+        in.position(start + snapshotHeaderBytes(version));
+        if (snapshotBoard == null) snapshotBoard = new BitBoard(width, height);
+        snapshotBoard.readFrom(in);
+        int end = in.position();
+        if (!snapshotBoard.isConsistent(Utils.PALETTE.length)) {
+            in.position(start);
+            throw new IllegalArgumentException("The tiles of a game snapshot's board do not match its colors");
+        }
+        in.position(start + 16);
+
+        seed = in.getLong();
+        Randomizer snapshotRandomizer = RANDOMIZERS[in.getInt()];
+        state = STATES[in.getInt()];
+        int tetromino = in.getInt(), rotation = in.getInt(), x = in.getInt(), y = in.getInt();
+        byte color = (byte) in.getInt();
+        ticksPerRow = in.getInt();
+        gravityTicks = in.getInt();
+        clearedCount = in.getInt();
+        for (int row = 0; row < Tetromino.TILES; row++) clearedRows[row] = in.getInt();
+        ticks = in.getLong();
+        steps = in.getLong();
+        piecesPlaced = in.getLong();
+        linesCleared = in.getLong();
+        long spawns = 0;
+        for (int index = 0; index < tetrominoCounts.length; index++) spawns += tetrominoCounts[index] = in.getInt();
+        for (int slot = 0; slot < ScoreStore.INPUT_SLOTS; slot++) {
+            int count = in.getInt();
+            if (slot < inputCounts.length) inputCounts[slot] = count;
+        }
+        restoreLevel(in, version);
+
+        if (snapshotRandomizer != randomizer) { // another kind of generator
+            randomizer = snapshotRandomizer;
+            seedGenerators();
+        }
+        if (version >= 3) {
+            long pieceSeed = in.getLong(), pieceGamma = in.getLong(), colorSeed = in.getLong(), colorGamma = in.getLong();
+            pieces.getRandom().setState(pieceSeed, pieceGamma);
+            random.setState(colorSeed, colorGamma);
+            pieces.setState(in.getInt());
+        } else { // no generator state yet: seeded again, then every spawn so far drawn again
+            seedGenerators();
+            for (long spawn = 0; spawn < spawns; spawn++) deal();
+        }
+
+        boardGrid.copyFrom(snapshotBoard);
+        in.position(end);
+
+        currentTetromino = tetromino;
+        currentRotation = rotation;
+        xPos = x;
+        yPos = y;
+        activeColor = color;
+        ghostShape = -1;
+        updateGhost();
+
+        clearDirty();
+        markDirty(0, 0, width - 1, height - 1);
+        markStackDirty(0, height - 1);
+        if (history != null) setRewindBuffer(history); // the frames were of another game
+    }
+
+    /**
+     * Takes the game back by up to ticks ticks, as it was right after a tick (before the inputs
+     * applied ahead of the next one); the inputs applied since the last tick are undone first.
+     * Undone ticks leave the history, they cannot be redone. The cost is the undone frames only,
+     * whatever the length of the game: the generators' seeds are state words. The whole board is
+     * dirty afterwards.
+     *
+     * @return ticks undone, fewer than ticks when the history does not reach back that far
+     */
+    public int rewind(int ticks) {
+        if (history == null) throw new IllegalStateException("No rewind buffer set");
+
+        endFrame();
+        int[] state = frameState; // as the game is now, the undone frames take it back
+        int undone = -1; // the frame of the inputs since the last tick does not count
+        while (undone < ticks && history.getFrames() > 0) {
+            undoFrame(state);
+            undone++;
+        }
+
+        writeState(state); // the generators too; state is the start of the next frame
+
+        ghostShape = -1;
+        updateGhost();
+        markDirty(0, 0, width - 1, height - 1);
+        markStackDirty(0, height - 1);
+        return Math.max(undone, 0);
+    }
+
+    // the gravity and score part of a snapshot's header, a version 1 snapshot has fixed gravity and no score
+    private void restoreLevel(ByteBuffer in, int version) {
+        if (version == 1) {
+            gravityRows = 1;
+            lockDelay = restingTicks = 0;
+            isGravityCurve = false;
+            startLevel = 1;
+            level = startLevel + (int) (linesCleared / Levels.LINES_PER_LEVEL);
+            combo = -1;
+            score = 0;
+            return;
+        }
+
+        gravityRows = in.getInt();
+        lockDelay = in.getInt();
+        restingTicks = in.getInt();
+        isGravityCurve = in.getInt() != 0;
+        startLevel = in.getInt();
+        level = in.getInt();
+        combo = in.getInt();
+        score = in.getLong();
+    }
+
+    // starts recording the ticks from here into history, null stops it; set from the thread that drives the engine
+    public void setRewindBuffer(RewindBuffer history) {
+        this.history = history;
+        if (history == null) return;
+
+        history.clear();
+        if (frameState == null) {
+            frameState = new int[STATE_WORDS];
+            scratchState = new int[STATE_WORDS];
+            rowColors = new byte[width];
+        }
+        readState(frameState);
+    }
+
+    public RewindBuffer getRewindBuffer() {
+        return history;
+    }
+
+    // set from the thread that drives the engine
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // fixed gravity of a row every ticksPerRow ticks, whatever the level
+    public void setTicksPerRow(int ticksPerRow) {
+        this.ticksPerRow = ticksPerRow;
+        gravityRows = 1;
+        lockDelay = 0;
+        isGravityCurve = false;
+    }
+
+    public int getTicksPerRow() {
+        return ticksPerRow;
+    }
+
+    public int getGravityRows() {
+        return gravityRows;
+    }
+
+    public int getLockDelay() {
+        return lockDelay;
+    }
+
+    // the gravity and lock delay of the level from Levels, getting faster with every level up
+    public void setGravityCurve(boolean isGravityCurve) {
+        this.isGravityCurve = isGravityCurve;
+        if (isGravityCurve) levelGravity();
+    }
+
+    public boolean isGravityCurve() {
+        return isGravityCurve;
+    }
+
+    // the level of a game that has not cleared any lines yet
+    public void setStartLevel(int startLevel) {
+        if (startLevel < 1) throw new IllegalArgumentException("Levels start at 1, not " + startLevel);
+
+        this.startLevel = startLevel;
+        level = startLevel + (int) (linesCleared / Levels.LINES_PER_LEVEL);
+        if (isGravityCurve) levelGravity();
+    }
+
+    public int getStartLevel() {
+        return startLevel;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getScore() {
+        return score;
+    }
+
+    public boolean isOver() {
+        return state != GameState.RUNNING;
+    }
+
+    public GameState getState() {
+        return state;
+    }
+
+    public BitBoard getBoard() {
+        return boardGrid;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Randomizer getRandomizer() {
+        return randomizer;
+    }
+
+    public int getTetromino() {
+        return currentTetromino;
+    }
+
+    public int getRotation() {
+        return currentRotation;
+    }
+
+    public int getX() {
+        return xPos;
+    }
+
+    public int getY() {
+        return yPos;
+    }
+
+    public byte getActiveColor() {
+        return activeColor;
+    }
+
+    // row the active tetromino would land on, its ghost is drawn there
+    public int getGhostY() {
+        return ghostY;
+    }
+
+    // rows cleared by the last step() or hard drop, bottom first; valid up to getClearedCount()
+    public int[] getClearedRows() {
+        return clearedRows;
+    }
+
+    public int getClearedCount() {
+        return clearedCount;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public long getPiecesPlaced() {
+        return piecesPlaced;
+    }
+
+    public long getLinesCleared() {
+        return linesCleared;
+    }
+
+    public int getTetrominoCount(int tetromino) {
+        return tetrominoCounts[tetromino];
+    }
+
+    // inputs of a type that moved, rotated or dropped the tetromino; blocked ones and key repeats against a wall do not count
+    public int getInputCount(Input input) {
+        return inputCounts[input.ordinal()];
+    }
+
+    public boolean isDirty() {
+        return dirtyMaxX >= dirtyMinX;
+    }
+
+    public int getDirtyMinX() {
+        return dirtyMinX;
+    }
+
+    public int getDirtyMinY() {
+        return dirtyMinY;
+    }
+
+    public int getDirtyMaxX() {
+        return dirtyMaxX;
+    }
+
+    public int getDirtyMaxY() {
+        return dirtyMaxY;
+    }
+
+    public boolean isStackDirty() {
+        return stackDirtyMaxY >= stackDirtyMinY;
+    }
+
+    public int getStackDirtyMinY() {
+        return stackDirtyMinY;
+    }
+
+    public int getStackDirtyMaxY() {
+        return stackDirtyMaxY;
+    }
+
+    // called by the view once it has scheduled a repaint of the dirty tiles
+    public void clearDirty() {
+        dirtyMinX = dirtyMinY = stackDirtyMinY = Integer.MAX_VALUE;
+        dirtyMaxX = dirtyMaxY = stackDirtyMaxY = Integer.MIN_VALUE;
+    }
+
+    private void markDirty(int minX, int minY, int maxX, int maxY) {
+        dirtyMinX = Math.min(dirtyMinX, minX);
+        dirtyMinY = Math.min(dirtyMinY, minY);
+        dirtyMaxX = Math.max(dirtyMaxX, maxX);
+        dirtyMaxY = Math.max(dirtyMaxY, maxY);
+    }
+
+    /**
+     * Rows of gravity at once, above 1G or with a lock delay. The ghost is where the active
+     * tetromino lands, so it moves there with one moveTo() instead of a collision check per row;
+     * a landed tetromino locks once it rested lockDelay ticks.
+     */
+    private void fall(int rows) {
+        if (isOver()) return;
+
+        int distance = Math.max(0, ghostY - yPos);
+        if (distance > 0) {
+            int fallen = Math.min(rows, distance);
+            steps += fallen;
+            clearedCount = 0;
+            restingTicks = 0;
+            moveTo(currentRotation, xPos, yPos + fallen);
+            if (fallen < distance) return;
+        }
+
+        if (++restingTicks < lockDelay) return;
+        restingTicks = 0;
+        step(); // locks it, the next tetromino falls its first row
+    }
+
+    // locks the active tetromino where it is, then ends the game or spawns the next one
+    private void lock() {
+        int shape = Tetromino.shape(currentTetromino, currentRotation);
+        boardGrid.fill(currentTetromino, currentRotation, xPos, yPos, activeColor);
+        if (history != null) recordLock(shape);
+        markDirty(shape, xPos, yPos);
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            int tileY = yPos + Tetromino.cellY(shape, tile);
+            if (tileY >= 0) markStackDirty(tileY, tileY);
+        }
+        piecesPlaced++;
+        gravityTicks = 0; // the next tetromino gets a full gravity interval
+        restingTicks = 0;
+        int stackTop = boardGrid.getTopRow();
+        clearedCount = clearLines();
+        linesCleared += clearedCount;
+        if (clearedCount > 0) {
+            markDirty(0, stackTop, width - 1, clearedRows[0]); // every row of the stack above the lowest cleared one moved
+            markStackDirty(stackTop, clearedRows[0]);
+            scoreLines(clearedCount);
+        } else {
+            combo = -1;
+        }
+
+        if (boardGrid.isEmpty()) {
+            state = GameState.WON;
+            return;
+        }
+
+        if (yPos < 2) {
+            state = GameState.LOST;
+            return;
+        }
+
+        spawn();
+    }
+
+    // points of a lock that cleared lines at the level it was made at, then the level up
+    private void scoreLines(int lines) {
+        combo++;
+        score += Levels.linePoints(lines, level) + (long) Levels.COMBO_POINTS * combo * level;
+
+        int reached = startLevel + (int) (linesCleared / Levels.LINES_PER_LEVEL);
+        if (reached == level) return;
+        level = reached;
+        if (isGravityCurve) levelGravity();
+    }
+
+    private void levelGravity() {
+        gravityRows = Levels.gravityRows(level);
+        ticksPerRow = Levels.gravityTicks(level);
+        lockDelay = Levels.lockDelay(level);
+    }
+
+    private void markStackDirty(int minY, int maxY) {
+        stackDirtyMinY = Math.min(stackDirtyMinY, minY);
+        stackDirtyMaxY = Math.max(stackDirtyMaxY, maxY);
+    }
+
+    // a move is a new pose and the tiles it left and entered marked dirty, the board is not written
+    private void moveTo(int rotation, int x, int y) {
+        markDirty(Tetromino.shape(currentTetromino, currentRotation), xPos, yPos);
+        currentRotation = rotation;
+        xPos = x;
+        yPos = y;
+        markDirty(Tetromino.shape(currentTetromino, currentRotation), xPos, yPos);
+        updateGhost();
+    }
+
+    // drops the active tetromino's pose onto the skyline of the stack
+    private void updateGhost() {
+        int shape = Tetromino.shape(currentTetromino, currentRotation);
+        int y = yPos + boardGrid.dropDistance(currentTetromino, currentRotation, xPos, yPos);
+        if (shape == ghostShape && xPos == ghostX && y == ghostY) return;
+
+        if (ghostShape >= 0) markDirty(ghostShape, ghostX, ghostY);
+        ghostShape = shape;
+        ghostX = xPos;
+        ghostY = y;
+        markDirty(ghostShape, ghostX, ghostY);
+    }
+
+    private void seedGenerators() {
+        SplitRandom root = new SplitRandom(seed);
+        pieces = randomizer.create(root.split());
+        random = root.split();
+    }
+
+    private void spawn() {
+        deal();
+        tetrominoCounts[currentTetromino]++;
+        if (history != null) {
+            history.put(currentTetromino);
+            putTag(SPAWN, 1);
+        }
+        currentRotation = 0;
+        yPos = -1;
+        markDirty(Tetromino.shape(currentTetromino, currentRotation), xPos, yPos);
+        updateGhost();
+    }
+
+    // the random draws of a spawn, in the order restore() replays them
+    private void deal() {
+        activeColor = (byte) (1 + random.nextInt(Utils.TETROMINO_COLORS));
+        currentTetromino = pieces.next();
+        xPos = 1 + random.nextInt(width - 3);
+    }
+
+    // only the rows of the locked tetromino can have become full
+    private int clearLines() {
+        int shape = Tetromino.shape(currentTetromino, currentRotation);
+        int fromRow = Integer.MAX_VALUE, toRow = Integer.MIN_VALUE;
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            fromRow = Math.min(fromRow, yPos + Tetromino.cellY(shape, tile));
+            toRow = Math.max(toRow, yPos + Tetromino.cellY(shape, tile));
+        }
+
+        if (metrics == null) return boardGrid.clearFullRows(clearedRows, fromRow, toRow);
+
+        long start = System.nanoTime();
+        int cleared = boardGrid.clearFullRows(clearedRows, fromRow, toRow);
+        metrics.record(Metrics.Stat.CLEAR_LINES, System.nanoTime() - start);
+        return cleared;
+    }
+
+    // whether the active tetromino would collide in the given pose
+    private boolean collides(int rotation, int x, int y) {
+        if (metrics == null) return boardGrid.collides(currentTetromino, rotation, x, y);
+
+        long start = System.nanoTime();
+        boolean collides = boardGrid.collides(currentTetromino, rotation, x, y);
+        metrics.record(Metrics.Stat.COLLISION, System.nanoTime() - start);
+        return collides;
+    }
+
+    // the tiles of a tetromino shape at (x, y) that are on the board
+    private void markDirty(int shape, int x, int y) {
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            int tileY = y + Tetromino.cellY(shape, tile);
+            if (tileY >= 0) markDirty(x + Tetromino.cellX(shape, tile), tileY, x + Tetromino.cellX(shape, tile), tileY);
+        }
+    }
+
+    // the locked tetromino, then the rows it filled before clearLines() removes them
+    private void recordLock(int shape) {
+        history.put(shape);
+        history.put(xPos);
+        history.put(yPos);
+        putTag(LOCK, 3);
+
+        int fromRow = Integer.MAX_VALUE, toRow = Integer.MIN_VALUE;
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            fromRow = Math.min(fromRow, yPos + Tetromino.cellY(shape, tile));
+            toRow = Math.max(toRow, yPos + Tetromino.cellY(shape, tile));
+        }
+        for (int row = Math.max(fromRow, 0); row <= toRow; row++) { // top first, so they are undone bottom first
+            if (!boardGrid.isRowFull(row)) continue;
+            putRow(row);
+            history.put(row);
+            putTag(CLEAR, 1 + rowWords());
+        }
+    }
+
+    // the state words that changed since the frame started, as they were, then the frame's end
+    private void endFrame() {
+        int[] state = scratchState;
+        readState(state);
+        long mask = 0;
+        for (int word = 0; word < STATE_WORDS; word++) {
+            if (state[word] == frameState[word]) continue;
+            history.put(frameState[word]);
+            mask |= 1L << word;
+        }
+        history.put((int) mask);
+        history.put((int) (mask >>> 32));
+        history.endFrame();
+
+        scratchState = frameState;
+        frameState = state;
+    }
+
+    // undoes the newest frame: its state words into state, its events on the board, newest first
+    private void undoFrame(int[] state) {
+        long end = history.getHead() - 2; // the frame's trailing length, before the next frame's leading one
+        long start = end + 1 - history.get(end);
+        long at = end - 1;
+        long mask = (long) history.get(at--) << 32;
+        mask |= history.get(at--) & 0xFFFFFFFFL;
+        for (int word = STATE_WORDS - 1; word >= 0; word--) {
+            if ((mask & 1L << word) != 0) state[word] = history.get(at--);
+        }
+
+        while (at > start) {
+            int tag = history.get(at);
+            long payload = at - (tag >>> 8);
+            switch (tag & 0xFF) {
+                case LOCK:
+                    int shape = history.get(payload), x = history.get(payload + 1), y = history.get(payload + 2);
+                    for (int tile = 0; tile < Tetromino.TILES; tile++) {
+                        int tileY = y + Tetromino.cellY(shape, tile);
+                        if (tileY >= 0) boardGrid.set(x + Tetromino.cellX(shape, tile), tileY, BitBoard.EMPTY);
+                    }
+                    break;
+                case CLEAR:
+                    getRow(payload);
+                    boardGrid.insertRow(history.get(payload + rowWords()), rowColors);
+                    break;
+                case SPAWN:
+                    tetrominoCounts[history.get(payload)]--;
+                    break;
+                case GARBAGE:
+                    int lines = (tag >>> 8) / rowWords();
+                    boardGrid.shiftDown(lines);
+                    for (int row = 0; row < lines; row++) {
+                        getRow(payload + row * rowWords());
+                        for (int col = 0; col < width; col++) {
+                            if (rowColors[col] != BitBoard.EMPTY) boardGrid.set(col, row, rowColors[col]);
+                        }
+                    }
+                    break;
+            }
+            at = payload - 1;
+        }
+
+        history.dropNewest();
+    }
+
+    private void putTag(int event, int payloadWords) {
+        history.put(event | payloadWords << 8);
+    }
+
+    // ints of a row's colors, four palette indexes each
+    private int rowWords() {
+        return (width + 3) >>> 2;
+    }
+
+    private void putRow(int row) {
+        for (int col = 0; col < width; col += 4) {
+            int word = 0;
+            for (int index = 0; index < 4 && col + index < width; index++) word |= (boardGrid.getColor(col + index, row) & 0xFF) << 8 * index;
+            history.put(word);
+        }
+    }
+
+    // the colors of a row written by putRow() at position into rowColors
+    private void getRow(long position) {
+        for (int col = 0; col < width; col += 4) {
+            int word = history.get(position + (col >>> 2));
+            for (int index = 0; index < 4 && col + index < width; index++) rowColors[col + index] = (byte) (word >>> 8 * index);
+        }
+    }
+
+    /**
+     * The scalar state as ints, one frame's undo is the words it changed:
+     *
+     *      tetromino, rotation, x, y, active color, state, ticks per row, gravity ticks,
+     *      cleared count, cleared rows [Tetromino.TILES],
+     *      ticks, steps, pieces placed, lines cleared      - longs, low word first
+     *      gravity rows, lock delay, resting ticks, level, combo, score (long)
+     *      piece seed (long), piece generator state, color seed (long)
+     *      input counts [Input]
+     */
+    private void readState(int[] words) {
+        words[0] = currentTetromino;
+        words[1] = currentRotation;
+        words[2] = xPos;
+        words[3] = yPos;
+        words[4] = activeColor;
+        words[5] = state.ordinal();
+        words[6] = ticksPerRow;
+        words[7] = gravityTicks;
+        words[8] = clearedCount;
+        for (int row = 0; row < Tetromino.TILES; row++) words[9 + row] = clearedRows[row];
+        putLong(words, 13, ticks);
+        putLong(words, 15, steps);
+        putLong(words, 17, piecesPlaced);
+        putLong(words, 19, linesCleared);
+        words[21] = gravityRows;
+        words[22] = lockDelay;
+        words[23] = restingTicks;
+        words[24] = level;
+        words[25] = combo;
+        putLong(words, 26, score);
+        putLong(words, 28, pieces.getRandom().getSeed()); // the gammas do not change during a game
+        words[30] = pieces.getState();
+        putLong(words, 31, random.getSeed());
+        System.arraycopy(inputCounts, 0, words, 33, inputCounts.length);
+    }
+
+    private void writeState(int[] words) {
+        currentTetromino = words[0];
+        currentRotation = words[1];
+        xPos = words[2];
+        yPos = words[3];
+        activeColor = (byte) words[4];
+        state = STATES[words[5]];
+        ticksPerRow = words[6];
+        gravityTicks = words[7];
+        clearedCount = words[8];
+        for (int row = 0; row < Tetromino.TILES; row++) clearedRows[row] = words[9 + row];
+        ticks = getLong(words, 13);
+        steps = getLong(words, 15);
+        piecesPlaced = getLong(words, 17);
+        linesCleared = getLong(words, 19);
+        gravityRows = words[21];
+        lockDelay = words[22];
+        restingTicks = words[23];
+        level = words[24];
+        combo = words[25];
+        score = getLong(words, 26);
+        pieces.getRandom().setState(getLong(words, 28), pieces.getRandom().getGamma());
+        pieces.setState(words[30]);
+        random.setState(getLong(words, 31), random.getGamma());
+        System.arraycopy(words, 33, inputCounts, 0, inputCounts.length);
+    }
+
+    private static void putLong(int[] words, int index, long value) {
+        words[index] = (int) value;
+        words[index + 1] = (int) (value >>> 32);
+    }
+
+    private static long getLong(int[] words, int index) {
+        return words[index] & 0xFFFFFFFFL | (long) words[index + 1] << 32;
+    }
+}
@@ -0,0 +1,233 @@
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Fixed-timestep loop that owns a GameEngine: only the loop thread touches the engine.
+ * Other threads submit() inputs or press() / release() keys, which the InputHandler turns into
+ * the inputs of the next tick, and read the game through the FrameBuffer the loop publishes
+ * after every frame.
+ *
+ * Gravity speed is the engine's ticks per row, so it can change without touching the tick rate.
+ */
+public class GameLoop {
+    public interface View {
+        // tiles (inclusive bounds) that changed in the FrameBuffer, called from the loop thread
+        void tilesChanged(int minX, int minY, int maxX, int maxY);
+
+        // called once from the loop thread, the loop is already stopped so the engine can be read
+        void gameOver(GameEngine engine);
+    }
+
+    private static final int MAX_CATCH_UP_TICKS = 5; // when further behind, the lag is dropped instead of spiralling
+
+    private final GameEngine engine;
+    private final FrameBuffer frameBuffer;
+    private final View view;
+    private final int tickRate;
+    private final long nanosPerTick;
+    private InputHandler keys = new InputHandler(); // timestamped key events into the engine, with auto-repeat
+    private final Predicate<Input> applier = this::apply;
+    private volatile Policy policy; // autoplayer, asked for inputs every tick
+    private ReplayWriter recorder; // set before start(), used by the loop thread only, may be null
+    private Metrics metrics; // set before start(), may be null
+    private ScheduledExecutorService executor; // the loop's own thread, or one shared with other loops, see start(executor)
+    private boolean isExecutorOwned = false;
+    private ScheduledFuture<?> frames;
+    private long lastFrame;
+    private long lag; // simulated time the loop is behind the clock
+
+    public GameLoop(GameEngine engine, FrameBuffer frameBuffer, View view, int tickRate) {
+        this.tickRate = tickRate;
+        this.engine = engine;
+        this.frameBuffer = frameBuffer;
+        this.view = view;
+        nanosPerTick = TimeUnit.SECONDS.toNanos(1) / tickRate;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public synchronized void start() {
+        if (frames != null) return;
+
+        start(Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-loop");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        isExecutorOwned = true;
+    }
+
+    // runs the frames on an executor shared with other loops, e.g. every board of a Tournament on one thread;
+    // stop() leaves a shared executor running
+    public synchronized void start(ScheduledExecutorService executor) {
+        if (frames != null) return;
+
+        this.executor = executor;
+        lastFrame = System.nanoTime();
+        lag = nanosPerTick; // first tick right away
+        frames = executor.scheduleAtFixedRate(this::frame, 0, nanosPerTick, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stop() {
+        if (frames == null) return;
+
+        frames.cancel(false);
+        if (isExecutorOwned) executor.shutdown();
+    }
+
+    // records the game as a replay, call before start(); the file is closed when the game is over or the JVM exits
+    public void record(Path path) {
+        recorder = new ReplayWriter(path, engine);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::closeRecorder, "replay-close"));
+    }
+
+    // ends the replay at the current tick, on the loop thread if it still runs: the recorder is not thread-safe
+    private void closeRecorder() {
+        ScheduledExecutorService loop;
+        synchronized (this) {
+            loop = executor;
+        }
+
+        if (loop != null && !loop.isShutdown()) {
+            try {
+                loop.submit(() -> recorder.close(engine.getTicks())).get(1, TimeUnit.SECONDS);
+                return;
+            } catch (Exception e) {
+                // the loop stopped or is stuck, close from here
+            }
+        }
+        recorder.close(engine.getTicks());
+    }
+
+    // writes the game to a Snapshot file on the loop thread, between two frames; call after start()
+    public synchronized CompletableFuture<Void> saveSnapshot(Path path) {
+        if (executor == null || executor.isShutdown()) return failed(new IllegalStateException("The game loop is not running"));
+
+        return CompletableFuture.runAsync(() -> Snapshot.write(engine, path), executor);
+    }
+
+    /**
+     * Takes the game back by up to ticks ticks on the loop thread, between two frames, see
+     * GameEngine.rewind(); completes with the ticks undone. Needs the engine's RewindBuffer and
+     * a game that is not recorded, the replay could not follow.
+     */
+    public synchronized CompletableFuture<Integer> rewind(int ticks) {
+        if (executor == null || executor.isShutdown()) return failed(new IllegalStateException("The game loop is not running"));
+        if (recorder != null) return failed(new IllegalStateException("A recorded game cannot be rewound"));
+
+        return CompletableFuture.supplyAsync(() -> engine.rewind(ticks), executor);
+    }
+
+    private static <T> CompletableFuture<T> failed(Exception e) {
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+
+    // times ticks, tick jitter and input latency, and through the engine its collision checks and line clears; call before start()
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        engine.setMetrics(metrics);
+    }
+
+    // DAS / ARR of held keys; call before start()
+    public void setInputHandler(InputHandler keys) {
+        this.keys = keys;
+    }
+
+    public InputHandler getInputHandler() {
+        return keys;
+    }
+
+    // thread-safe, the input is applied once on the loop thread before the next tick
+    public void submit(Input input) {
+        keys.tap(input);
+    }
+
+    // thread-safe, the input is applied before the next tick and repeats while held, see InputHandler
+    public void press(Input input) {
+        keys.press(input);
+    }
+
+    public void release(Input input) {
+        keys.release(input);
+    }
+
+    public void releaseAll() {
+        keys.releaseAll();
+    }
+
+    // null hands the game back to the player
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    // only inputs that changed the game are recorded, the others cannot change a replay either
+    private boolean apply(Input input) {
+        long tick = engine.getTicks();
+        boolean isChanged = engine.apply(input);
+        if (isChanged && recorder != null) recorder.input(tick, input);
+        return isChanged;
+    }
+
+    private void frame() {
+        long now = System.nanoTime();
+        if (metrics != null && engine.getTicks() > 0) metrics.record(Metrics.Stat.TICK_JITTER, Math.abs(now - lastFrame - nanosPerTick));
+        lag += now - lastFrame;
+        lastFrame = now;
+        long submitted = 0; // key event time of the oldest input this frame applies
+
+        // run every tick the clock says is due, but never more than MAX_CATCH_UP_TICKS at once
+        int ticks = 0;
+        while (lag >= nanosPerTick && !engine.isOver()) {
+            if (ticks++ == MAX_CATCH_UP_TICKS) {
+                lag = 0;
+                break;
+            }
+
+            keys.update(now - lag + nanosPerTick, applier); // key events and repeats due by the end of this tick
+            if (submitted == 0) submitted = keys.takeAppliedNanos();
+
+            Input input;
+            Policy autoplayer = policy;
+            while (autoplayer != null && (input = autoplayer.next(engine)) != null) apply(input);
+
+            if (metrics == null) {
+                engine.tick();
+            } else {
+                long start = System.nanoTime();
+                engine.tick();
+                metrics.record(Metrics.Stat.TICK, System.nanoTime() - start);
+            }
+            if (recorder != null) recorder.tick(engine.getTicks());
+            lag -= nanosPerTick;
+        }
+
+        if (engine.isDirty()) {
+            int minX = engine.getDirtyMinX(), minY = engine.getDirtyMinY();
+            int maxX = engine.getDirtyMaxX(), maxY = engine.getDirtyMaxY();
+
+            frameBuffer.publish(engine);
+            if (submitted != 0) frameBuffer.inputApplied(submitted); // an input that changed nothing is never painted
+            engine.clearDirty();
+            view.tilesChanged(minX, minY, maxX, maxY);
+        }
+
+        if (engine.isOver()) {
+            if (recorder != null) recorder.close(engine.getTicks());
+            stop();
+            view.gameOver(engine);
+        }
+    }
+}
@@ -0,0 +1,490 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Head-to-head game server: one thread, one Selector, any number of matches.
+ *
+ *      accept      the session waits until playersPerMatch sessions are waiting, they start a match
+ *      read        INPUT messages are queued, the next tick applies them to the session's engine
+ *      tick        every match's engines tick, cleared lines become garbage for the opponents,
+ *                  and each match encodes one TICK of the changes that is copied to its players
+ *      write       once per tick and session, the rest when the socket can take it (OP_WRITE)
+ *
+ * The engines are the authoritative games, clients only send inputs and draw what they get, see
+ * Protocol. A client that falls a whole output buffer behind is disconnected and loses its game.
+ *
+ *      java GameServer [port] [players per match] [bot clients] [seed]
+ *
+ * With bot clients, that many GameClient bots play over loopback and the server stops when they
+ * are done. The seed picks every match's seed and the garbage holes; without one it is the clock,
+ * printed so that the run can be played again.
+ */
+public class GameServer implements Runnable {
+    public static final int DEFAULT_PORT = 7341;
+
+    private static final int TICK_RATE = 60; // ticks per second, as the GameLoop
+    private static final int MAX_CATCH_UP_TICKS = 5; // when further behind, the lag is dropped instead of spiralling
+    private static final int MAX_QUEUED_INPUTS = 32; // per session and tick, more are dropped
+    private static final int[] GARBAGE_LINES = {0, 0, 1, 2, 4}; // sent per lines cleared at once
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final int playersPerMatch;
+    private final int width;
+    private final int height;
+    private final long nanosPerTick;
+    private final SplittableRandom random; // match seeds and garbage holes
+    private final ByteBuffer frame; // one match's messages of a tick, encoded once and copied to each player
+    private final int outCapacity; // per session
+    private final List<Session> sessions = new ArrayList<>();
+    private final List<Session> waiting = new ArrayList<>();
+    private final List<Match> matches = new ArrayList<>();
+    private final Histogram tickNanos = new Histogram(); // all matches of a tick
+    private volatile boolean isRunning = true;
+    private long matchesPlayed = 0;
+    private long bytesWritten = 0;
+
+    private static class Session {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(256);
+        final ByteBuffer out;
+        final byte[] inputs = new byte[MAX_QUEUED_INPUTS]; // Input ordinals since the last tick
+        int inputCount = 0;
+        Match match; // null while waiting
+        int player;
+        boolean isClosing = false; // closed once out is written
+
+        Session(SocketChannel channel, SelectionKey key, int outCapacity) {
+            this.channel = channel;
+            this.key = key;
+            out = ByteBuffer.allocateDirect(outCapacity);
+        }
+    }
+
+    private class Match {
+        final Session[] players;
+        final GameEngine[] engines;
+        final BitBoard[] sent; // the boards as the clients have them, the changes are sent against these
+        final GameState[] sentStates;
+        final boolean[] isOut; // disconnected, the game is lost
+        final int[] garbageSent; // lines each player cleared for its opponents this tick
+        long tick = 0;
+
+        Match(Session[] players, long seed) {
+            this.players = players;
+            engines = new GameEngine[players.length];
+            sent = new BitBoard[players.length];
+            sentStates = new GameState[players.length];
+            isOut = new boolean[players.length];
+            garbageSent = new int[players.length];
+
+            for (int player = 0; player < players.length; player++) {
+                engines[player] = new GameEngine(width, height, seed, Randomizer.BAG); // the same pieces for everybody
+                engines[player].setTicksPerRow(30);
+                sent[player] = new BitBoard(width, height);
+                players[player].match = this;
+                players[player].player = player;
+            }
+        }
+
+        boolean isRunning(int player) {
+            return !isOut[player] && !engines[player].isOver();
+        }
+
+        GameState state(int player) {
+            return isOut[player] ? GameState.LOST : engines[player].getState();
+        }
+    }
+
+    public GameServer(int port, int playersPerMatch, int width, int height, long seed) {
+        this.playersPerMatch = playersPerMatch;
+        this.width = width;
+        this.height = height;
+        nanosPerTick = TimeUnit.SECONDS.toNanos(1) / TICK_RATE;
+        random = new SplittableRandom(seed);
+
+        int tickBytes = Protocol.HEADER_BYTES + 9 + playersPerMatch * (Protocol.BOARD_BYTES + width * height * Protocol.CELL_BYTES);
+        int otherBytes = playersPerMatch * playersPerMatch * (Protocol.HEADER_BYTES + 3) + Protocol.HEADER_BYTES + 1; // GARBAGE per two players and OVER
+        frame = ByteBuffer.allocate(tickBytes + otherBytes);
+        outCapacity = Math.max(1 << 16, 2 * frame.capacity());
+
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not listen on port " + port, e);
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public long getMatchesPlayed() {
+        return matchesPlayed;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public Histogram getTickNanos() {
+        return tickNanos;
+    }
+
+    // thread-safe, run() returns after its current tick
+    public void stop() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime();
+
+        try {
+            while (isRunning) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > TimeUnit.MILLISECONDS.toNanos(1)) selector.select(TimeUnit.NANOSECONDS.toMillis(wait));
+                else selector.selectNow();
+
+                for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) accept();
+                    else if (key.isReadable()) read((Session) key.attachment());
+                    if (key.isValid() && key.isWritable()) flush((Session) key.attachment());
+                }
+
+                // every tick that is due, writes batched after them
+                long now = System.nanoTime();
+                if (now - nextTick < 0) continue;
+
+                for (int ticks = 0; now - nextTick >= 0; ticks++) {
+                    if (ticks == MAX_CATCH_UP_TICKS) {
+                        nextTick = now;
+                        break;
+                    }
+
+                    long start = System.nanoTime();
+                    tick();
+                    tickNanos.record(System.nanoTime() - start);
+                    nextTick += nanosPerTick;
+                }
+
+                for (int index = sessions.size() - 1; index >= 0; index--) flush(sessions.get(index));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Session session : new ArrayList<>(sessions)) close(session);
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // a tick's frame is written at once, nothing to coalesce
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            Session session = new Session(channel, key, outCapacity);
+            key.attach(session);
+            sessions.add(session);
+
+            waiting.add(session);
+            if (waiting.size() == playersPerMatch) {
+                matches.add(start(waiting.toArray(new Session[0])));
+                waiting.clear();
+            }
+        }
+    }
+
+    private Match start(Session[] players) {
+        Match match = new Match(players, random.nextLong());
+        for (Session session : players) {
+            int start = Protocol.begin(session.out, Protocol.START);
+            session.out.put((byte) session.player);
+            session.out.put((byte) players.length);
+            session.out.putShort((short) width);
+            session.out.putShort((short) height);
+            Protocol.end(session.out, start);
+        }
+        return match;
+    }
+
+    private void read(Session session) {
+        int read;
+        try {
+            read = session.channel.read(session.in);
+        } catch (IOException e) {
+            read = -1; // reset by the client
+        }
+
+        if (read < 0) {
+            close(session);
+            return;
+        }
+
+        ByteBuffer in = session.in;
+        in.flip();
+        try {
+            byte type;
+            while ((type = Protocol.next(in)) != 0) {
+                int message = in.position(), end = Protocol.frameEnd(in, message);
+                if (type == Protocol.INPUT && end > message && session.match != null && session.inputCount < MAX_QUEUED_INPUTS)
+                    session.inputs[session.inputCount++] = in.get();
+                in.position(end); // other messages are skipped
+            }
+        } catch (IllegalStateException e) {
+            close(session); // not our protocol
+            return;
+        }
+        in.compact();
+        if (!in.hasRemaining()) close(session); // a frame larger than a client ever sends
+    }
+
+    private void tick() {
+        for (int index = matches.size() - 1; index >= 0; index--) {
+            Match match = matches.get(index);
+            if (tick(match)) {
+                matches.remove(index);
+                matchesPlayed++;
+            }
+        }
+    }
+
+    // true when the match is over
+    private boolean tick(Match match) {
+        Input[] inputs = Input.values();
+        match.tick++;
+        frame.clear();
+
+        for (int player = 0; player < match.engines.length; player++) {
+            Session session = match.players[player];
+            GameEngine engine = match.engines[player];
+
+            for (int index = 0; index < session.inputCount && match.isRunning(player); index++) {
+                int input = session.inputs[index];
+                if (input < 0 || input >= inputs.length) continue;
+
+                long pieces = engine.getPiecesPlaced();
+                engine.apply(inputs[input]);
+                if (engine.getPiecesPlaced() != pieces) locked(match, player);
+            }
+            session.inputCount = 0;
+
+            if (!match.isRunning(player)) continue;
+
+            long pieces = engine.getPiecesPlaced();
+            engine.tick();
+            if (engine.getPiecesPlaced() != pieces) locked(match, player);
+        }
+
+        // garbage after every engine ticked, so the order of the players does not matter
+        for (int player = 0; player < match.engines.length; player++) {
+            int lines = 0;
+            for (int opponent = 0; opponent < match.engines.length; opponent++) {
+                if (opponent == player || match.garbageSent[opponent] == 0) continue;
+
+                lines += match.garbageSent[opponent];
+                int start = Protocol.begin(frame, Protocol.GARBAGE);
+                frame.put((byte) opponent);
+                frame.put((byte) player);
+                frame.put((byte) Math.min(match.garbageSent[opponent], 0xFF));
+                Protocol.end(frame, start);
+            }
+
+            if (lines > 0 && match.isRunning(player)) match.engines[player].addGarbage(lines, random.nextInt(width));
+        }
+        for (int player = 0; player < match.engines.length; player++) match.garbageSent[player] = 0;
+
+        encodeTick(match);
+
+        // a board cleared wins at once, otherwise the last player still running
+        int running = 0, winner = Protocol.NO_PLAYER;
+        for (int player = 0; player < match.engines.length; player++) {
+            if (match.state(player) == GameState.WON) {
+                winner = player;
+                running = 0;
+                break;
+            }
+            if (match.isRunning(player)) {
+                running++;
+                winner = player;
+            }
+        }
+        boolean isOver = running == 0 || (running == 1 && match.engines.length > 1);
+        if (isOver) {
+            int start = Protocol.begin(frame, Protocol.OVER);
+            frame.put((byte) (running <= 1 ? winner : Protocol.NO_PLAYER));
+            Protocol.end(frame, start);
+        }
+
+        frame.flip();
+        for (Session session : match.players) {
+            if (!session.channel.isOpen()) continue;
+
+            if (session.out.remaining() < frame.remaining()) {
+                close(session); // too far behind
+                continue;
+            }
+
+            session.out.put(frame.duplicate());
+            if (isOver) session.isClosing = true;
+        }
+
+        return isOver;
+    }
+
+    // the engine of player locked a tetromino, the lines it cleared go to every opponent at the end of the tick
+    private void locked(Match match, int player) {
+        match.garbageSent[player] += GARBAGE_LINES[Math.min(match.engines[player].getClearedCount(), GARBAGE_LINES.length - 1)];
+    }
+
+    // the boards of the match that changed since the last TICK, only their changed cells
+    private void encodeTick(Match match) {
+        int start = Protocol.begin(frame, Protocol.TICK);
+        frame.putLong(match.tick);
+        int boardsAt = frame.position();
+        frame.put((byte) 0);
+        int boards = 0;
+
+        for (int player = 0; player < match.engines.length; player++) {
+            GameEngine engine = match.engines[player];
+            GameState state = match.state(player);
+            if (!engine.isDirty() && state == match.sentStates[player]) continue;
+
+            frame.put((byte) player);
+            frame.put((byte) state.ordinal());
+            frame.put((byte) engine.getTetromino());
+            frame.put((byte) engine.getRotation());
+            frame.putShort((short) engine.getX());
+            frame.putShort((short) engine.getY());
+            frame.putShort((short) engine.getGhostY());
+            frame.put(engine.getActiveColor());
+            frame.putInt((int) engine.getLinesCleared());
+            frame.putInt((int) engine.getPiecesPlaced());
+
+            int cellsAt = frame.position();
+            frame.putInt(0);
+            int cells = 0;
+            if (engine.isStackDirty()) {
+                BitBoard board = engine.getBoard(), sent = match.sent[player];
+                int minY = engine.getStackDirtyMinY(), maxY = engine.getStackDirtyMaxY();
+                for (int y = minY; y <= maxY; y++) {
+                    for (int x = 0; x < width; x++) {
+                        byte color = board.getColor(x, y);
+                        if (color == sent.getColor(x, y)) continue;
+
+                        frame.putShort((short) x);
+                        frame.putShort((short) y);
+                        frame.put(color);
+                        cells++;
+                    }
+                }
+                sent.copyRowsFrom(board, minY, maxY);
+            }
+            frame.putInt(cellsAt, cells);
+
+            match.sentStates[player] = state;
+            engine.clearDirty();
+            boards++;
+        }
+
+        if (boards == 0) {
+            frame.position(start); // nothing changed, nothing to send
+            return;
+        }
+
+        frame.put(boardsAt, (byte) boards);
+        Protocol.end(frame, start);
+    }
+
+    // writes what the socket takes now, the rest when it is writable again
+    private void flush(Session session) {
+        ByteBuffer out = session.out;
+        if (!session.key.isValid()) return;
+
+        if (out.position() > 0) {
+            out.flip();
+            try {
+                bytesWritten += session.channel.write(out);
+            } catch (IOException e) {
+                out.clear();
+                close(session);
+                return;
+            }
+            out.compact();
+        }
+
+        if (out.position() > 0) {
+            session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else if (session.isClosing) {
+            close(session);
+        } else if ((session.key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+            session.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    // a session that leaves a running match loses its game
+    private void close(Session session) {
+        if (!sessions.remove(session)) return;
+
+        waiting.remove(session);
+        if (session.match != null) session.match.isOut[session.player] = true;
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int bots = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+
+        GameServer server = new GameServer(port, players, 10, 20, seed);
+        Thread thread = new Thread(server, "game-server");
+        thread.start();
+        System.out.printf("listening on port %d, %d players per match, seed %d%n", server.getPort(), players, seed);
+        if (bots == 0) return;
+
+        long start = System.nanoTime();
+        GameClient clients = new GameClient("localhost", server.getPort(), bots);
+        clients.run();
+        server.stop();
+        thread.join();
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Histogram ticks = server.getTickNanos();
+        System.out.println(clients.getSummary());
+        System.out.printf("%d matches in %d ms, %d KB written, tick mean %.1f us p99 %.1f us max %.1f us%n",
+                server.getMatchesPlayed(), millis, server.getBytesWritten() / 1024,
+                ticks.getMean() / 1000, ticks.getValueAtPercentile(99) / 1000.0, ticks.getMax() / 1000.0);
+    }
+}
@@ -0,0 +1,5 @@
+public enum GameState {
+    RUNNING,
+    WON, // board got cleared
+    LOST // tetromino locked too high
+}
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+/**
+ * Latency histogram in the style of HdrHistogram: log-linear buckets over nanoseconds with a
+ * fixed relative precision, SUB_BUCKETS per power of two, in one preallocated array.
+ *
+ *      value       0 .. 2*SUB-1    -> bucket value                 (exact)
+ *      value       >= 2*SUB        -> top SUB_BITS+1 bits of value (within 1 / SUB)
+ *
+ * record() does not allocate and does not lock. Each histogram has a single writer thread;
+ * other threads may read or copy it while it is written and see counts that are at most a
+ * few records behind.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS; // ~3% precision
+    private static final int MAX_SHIFT = 40 - SUB_BITS; // values up to 2^40 ns (~18 minutes), larger ones are clamped
+    private static final int BUCKETS = (MAX_SHIFT + 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+
+    public void record(long value) {
+        counts[index(Math.max(0, value))]++;
+        count++;
+        sum += value;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    // highest value of the bucket that holds the given percentile (0 .. 100), 0 if empty
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (long bucketCount : counts) total += bucketCount; // count may be ahead of the copied counts
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) return highestValue(bucket);
+        }
+
+        return highestValue(BUCKETS - 1);
+    }
+
+    public long getMax() {
+        return getValueAtPercentile(100);
+    }
+
+    public void copyFrom(Histogram other) {
+        System.arraycopy(other.counts, 0, counts, 0, BUCKETS);
+        count = other.count;
+        sum = other.sum;
+    }
+
+    // this = later - earlier, for the records made between two copies of the same histogram
+    public void setDifference(Histogram later, Histogram earlier) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) counts[bucket] = later.counts[bucket] - earlier.counts[bucket];
+        count = later.count - earlier.count;
+        sum = later.sum - earlier.sum;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+    }
+
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+
+        int shift = Math.min(MAX_SHIFT, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        long top = Math.min(2 * SUB_BUCKETS - 1, value >>> shift); // SUB .. 2*SUB-1
+        return (shift + 1) * SUB_BUCKETS + (int) (top - SUB_BUCKETS);
+    }
+
+    private static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
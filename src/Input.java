@@ -0,0 +1,8 @@
+// player actions the engine understands, independent of the keys that trigger them
+public enum Input {
+    LEFT,
+    RIGHT,
+    DOWN,
+    ROTATE,
+    HARD_DROP // straight down and locked at once
+}
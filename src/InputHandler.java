@@ -0,0 +1,186 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Turns timestamped key presses and releases into the Inputs of each tick, with its own
+ * auto-repeat instead of the operating system's:
+ *
+ *      press           the input is applied once, right away
+ *      held for DAS    (delayed auto shift) it starts repeating
+ *      then every ARR  (auto repeat rate) it is applied again, ARR 0 repeats up to the wall
+ *
+ *      time   |press                  |DAS        |ARR  |ARR  |release
+ *      input  x-----------------------x-----------x-----x-----|
+ *
+ * Any thread press()es and release()s; update() runs on the game loop thread before a tick and
+ * applies everything due by then, so one tick can apply several inputs and a repeat never waits
+ * for a key event. Of LEFT and RIGHT held together, the one pressed last repeats. Other inputs
+ * (ROTATE, HARD_DROP) are applied once per press: the operating system's repeats of a key still
+ * down and its release + press pairs are dropped, so holding the key does not spin the tetromino
+ * or drop the ones after it. The press of such a pair can reach the queue after the update that
+ * polled its release, so a release takes effect one update late, unless a press takes it back:
+ *
+ *      update n        polls a release             the key counts as held, without repeats
+ *      update n + 1    polls the press of the pair the key was never up, DAS goes on
+ *                      or polls no press           the key is up
+ */
+public class InputHandler {
+    public static final long DEFAULT_DAS_MILLIS = 167; // 10 frames at 60 Hz
+    public static final long DEFAULT_ARR_MILLIS = 33; // 2 frames at 60 Hz
+
+    private static final long AUTO_REPEAT_NANOS = TimeUnit.MILLISECONDS.toNanos(2); // a release and press closer than this are OS key repeat
+    private static final int MAX_REPEATS = 64; // per input and update, ARR 0 stops there or when the input does nothing
+
+    private static final int TAP = 0, PRESS = 1, RELEASE = 2;
+
+    private static class Event {
+        final Input input;
+        final int type;
+        final long nanos; // System.nanoTime() of the key event
+
+        Event(Input input, int type, long nanos) {
+            this.input = input;
+            this.type = type;
+            this.nanos = nanos;
+        }
+    }
+
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final long dasNanos;
+    private final long arrNanos;
+    // loop thread only
+    private final Input[] inputs = Input.values();
+    private final boolean[] isHeld = new boolean[inputs.length];
+    private final long[] pressedAt = new long[inputs.length];
+    private final long[] nextRepeat = new long[inputs.length];
+    private final boolean[] isReleasing = new boolean[inputs.length]; // released, acted on in the next update
+    private final long[] releasedAt = new long[inputs.length];
+    private final int[] releaseUpdates = new int[inputs.length]; // updates that saw the release so far
+    private long appliedNanos = 0; // key event time of the oldest input applied since takeAppliedNanos(), 0 if none
+
+    public InputHandler() {
+        this(DEFAULT_DAS_MILLIS, DEFAULT_ARR_MILLIS);
+    }
+
+    public InputHandler(long dasMillis, long arrMillis) {
+        dasNanos = TimeUnit.MILLISECONDS.toNanos(dasMillis);
+        arrNanos = TimeUnit.MILLISECONDS.toNanos(arrMillis);
+    }
+
+    // a single input that is not a key, without auto-repeat
+    public void tap(Input input) {
+        events.add(new Event(input, TAP, System.nanoTime()));
+    }
+
+    public void press(Input input) {
+        events.add(new Event(input, PRESS, System.nanoTime()));
+    }
+
+    public void release(Input input) {
+        events.add(new Event(input, RELEASE, System.nanoTime()));
+    }
+
+    // e.g. when the window loses focus and the releases would never arrive
+    public void releaseAll() {
+        long now = System.nanoTime();
+        for (Input input : Input.values()) events.add(new Event(input, RELEASE, now));
+    }
+
+    // loop thread: applies the inputs of the key events so far and the repeats due by nanos,
+    // apply tells whether an input changed the game
+    public void update(long nanos, Predicate<Input> apply) {
+        Event event;
+        while ((event = events.poll()) != null) {
+            int index = event.input.ordinal();
+
+            if (event.type == RELEASE) {
+                if (isHeld[index] && !isReleasing[index]) {
+                    isReleasing[index] = true;
+                    releasedAt[index] = event.nanos;
+                    releaseUpdates[index] = 0;
+                }
+                continue;
+            }
+
+            if (event.type == PRESS) {
+                if (isReleasing[index]) {
+                    isReleasing[index] = false;
+                    // X11 turns a held key into release + press pairs with the same time, the key is still held
+                    if (event.nanos - releasedAt[index] < AUTO_REPEAT_NANOS) continue;
+                    isHeld[index] = false; // up and down again
+                }
+                if (isHeld[index]) continue; // key repeat of the operating system
+
+                isHeld[index] = true;
+                pressedAt[index] = event.nanos;
+                nextRepeat[index] = event.nanos + dasNanos;
+            }
+
+            applied(event.nanos);
+            apply.test(event.input);
+        }
+
+        // a release no press took back since the last update: the key is up
+        for (int index = 0; index < inputs.length; index++) {
+            if (isReleasing[index] && releaseUpdates[index]++ > 0) {
+                isReleasing[index] = false;
+                isHeld[index] = false;
+            }
+        }
+
+        for (int index = 0; index < inputs.length; index++) {
+            if (!isHeld[index] || isReleasing[index]) continue; // no repeats while a release may be real
+
+            if (!isRepeating(inputs[index])) {
+                nextRepeat[index] = nanos + dasNanos; // held behind the other direction, DAS again once that is released
+                continue;
+            }
+
+            for (int repeats = 0; nextRepeat[index] <= nanos && repeats < MAX_REPEATS; repeats++) {
+                long due = nextRepeat[index];
+                boolean isChanged = apply.test(inputs[index]);
+                if (isChanged) applied(due);
+
+                if (arrNanos > 0) {
+                    nextRepeat[index] += arrNanos;
+                } else if (!isChanged) {
+                    break; // at the wall, tried again next update
+                }
+            }
+        }
+    }
+
+    // loop thread: key event time (System.nanoTime()) of the oldest input applied since the last call, 0 if none
+    public long takeAppliedNanos() {
+        long nanos = appliedNanos;
+        appliedNanos = 0;
+        return nanos;
+    }
+
+    public long getDasMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(dasNanos);
+    }
+
+    public long getArrMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(arrNanos);
+    }
+
+    private boolean isRepeating(Input input) {
+        switch (input) {
+            case LEFT:
+                return !isHeld[Input.RIGHT.ordinal()] || pressedAt[Input.LEFT.ordinal()] - pressedAt[Input.RIGHT.ordinal()] > 0;
+            case RIGHT:
+                return !isHeld[Input.LEFT.ordinal()] || pressedAt[Input.RIGHT.ordinal()] - pressedAt[Input.LEFT.ordinal()] > 0;
+            case DOWN:
+                return true;
+            default:
+                return false; // one rotation per key press
+        }
+    }
+
+    private void applied(long nanos) {
+        if (appliedNanos == 0) appliedNanos = nanos;
+    }
+}
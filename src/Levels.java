@@ -0,0 +1,73 @@
+/**
+ * Score and gravity tables of the levels, guideline style. Every LINES_PER_LEVEL cleared lines
+ * are a level up.
+ *
+ *      lines       single 100, double 300, triple 500, tetris 800 - times the level
+ *      combo       50 x combo x level for every further lock in a row that clears lines
+ *      drops       1 per row soft dropped, 2 per row hard dropped
+ *
+ * Gravity follows the guideline curve of (0.8 - (level - 1) * 0.007) ^ (level - 1) seconds per
+ * row at TICK_RATE ticks per second, as gravityRows(level) rows every gravityTicks(level) ticks:
+ *
+ *      level  1 .. 13      1 row every 60 .. 1 ticks
+ *      level 14 .. 19      1.4 .. 20 rows per tick, in sixteenths of a row
+ *      level 20 and up     20G, the whole height of a standard board in one tick
+ *
+ * From 1G on, a tetromino that landed locks after lockDelay(level) ticks instead of at the next
+ * row of gravity, or a piece could not be moved at all once it fell in a single tick.
+ */
+public class Levels {
+    public static final int LINES_PER_LEVEL = 10;
+    public static final int MAX_LEVEL = 20; // the gravity does not get faster after it
+    public static final int TICK_RATE = 60; // ticks per second the curve is made for, as the game loop's
+    public static final int LOCK_DELAY_TICKS = 30;
+    public static final int SOFT_DROP_POINTS = 1;
+    public static final int HARD_DROP_POINTS = 2;
+    public static final int COMBO_POINTS = 50;
+
+    private static final int[] LINE_POINTS = {0, 100, 300, 500, 800};
+    private static final int SUB_ROWS = 16; // above 1G the rows per tick are counted in sixteenths
+    private static final int MAX_ROWS_PER_TICK = 20;
+    // by level, 0 is unused
+    private static final int[] GRAVITY_ROWS = new int[MAX_LEVEL + 1];
+    private static final int[] GRAVITY_TICKS = new int[MAX_LEVEL + 1];
+
+    static {
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            double ticksPerRow = Math.pow(0.8 - (level - 1) * 0.007, level - 1) * TICK_RATE;
+            if (ticksPerRow >= 1) {
+                GRAVITY_ROWS[level] = 1;
+                GRAVITY_TICKS[level] = (int) Math.round(ticksPerRow);
+            } else {
+                GRAVITY_ROWS[level] = (int) Math.min(Math.round(SUB_ROWS / ticksPerRow), MAX_ROWS_PER_TICK * SUB_ROWS);
+                GRAVITY_TICKS[level] = SUB_ROWS;
+            }
+        }
+    }
+
+    private Levels() {
+    }
+
+    // points of a lock that cleared lines rows, before the combo
+    public static int linePoints(int lines, int level) {
+        return LINE_POINTS[Math.min(lines, LINE_POINTS.length - 1)] * level;
+    }
+
+    // rows of gravity every gravityTicks(level) ticks
+    public static int gravityRows(int level) {
+        return GRAVITY_ROWS[clamp(level)];
+    }
+
+    public static int gravityTicks(int level) {
+        return GRAVITY_TICKS[clamp(level)];
+    }
+
+    // ticks a landed tetromino rests before it locks, 0 below 1G: it locks at the next row of gravity
+    public static int lockDelay(int level) {
+        return gravityRows(level) >= gravityTicks(level) ? LOCK_DELAY_TICKS : 0;
+    }
+
+    private static int clamp(int level) {
+        return Math.max(1, Math.min(level, MAX_LEVEL));
+    }
+}
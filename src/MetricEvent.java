@@ -0,0 +1,43 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event for every value Metrics records, so a recording shows the game's
+ * hot paths next to GC and JIT activity:
+ *
+ *      java -XX:StartFlightRecording=filename=tetris.jfr Tetris
+ *      jfr print --events swingtetris.Metric tetris.jfr
+ *
+ * Only Metrics touches this class, and only when the JVM has JFR (JDK 11, 8u272 and later).
+ */
+@Name("swingtetris.Metric")
+@Label("Game Metric")
+@Category("SwingTetris")
+@Description("A timed section or latency of the game loop or the view")
+@StackTrace(false)
+class MetricEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(MetricEvent.class);
+
+    @Label("Metric")
+    String metric;
+
+    @Label("Value")
+    @Timespan(Timespan.NANOSECONDS)
+    long value;
+
+    // no event is allocated unless a recording has the event enabled
+    static void commit(Metrics.Stat stat, long nanos) {
+        if (!TYPE.isEnabled()) return;
+
+        MetricEvent event = new MetricEvent();
+        event.metric = stat.getLabel();
+        event.value = nanos;
+        event.commit();
+    }
+}
@@ -0,0 +1,252 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Latency histograms of the game's hot paths, one per Stat, plus the rates derived from them.
+ *
+ *      writers     record() from the thread that owns the stat, no allocation and no locking
+ *      readers     sample() turns the records since the previous sample into an interval,
+ *                  the overlay and JMX read the interval
+ *
+ * Every record also goes to JFR as a MetricEvent when the JVM has it, and register() publishes
+ * the interval as a MetricsMXBean.
+ */
+public class Metrics implements MetricsMXBean {
+    public enum Stat {
+        TICK("tick"), // GameLoop, engine.tick()
+        KEY_PRESSED("keyPressed"), // Board, on the EDT
+        COLLISION("collision"), // GameEngine, collision checks of the active tetromino
+        CLEAR_LINES("clearLines"), // GameEngine, clearing full rows after a lock
+        PAINT("paint"), // Board.paintComponent
+        TICK_JITTER("tickJitter"), // GameLoop, how far a frame started from its schedule
+        INPUT_LATENCY("inputLatency"); // submit() of an input until the frame showing it is painted
+
+        private final String label;
+
+        Stat(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // one stat over a sample interval, in microseconds
+    public static class Summary {
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p99;
+        private final double max;
+
+        @ConstructorProperties({"count", "mean", "p50", "p99", "max"})
+        public Summary(long count, double mean, double p50, double p99, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+
+    private static final long SAMPLE_NANOS = 500_000_000; // shorter calls to sample() keep the previous interval
+    private static final boolean IS_JFR_AVAILABLE = isAvailable("jdk.jfr.Event");
+    private static final int STATS = Stat.values().length;
+
+    private final Histogram[] live = new Histogram[STATS]; // written by the stat's thread
+    private final long[] writers = new long[STATS]; // id of the thread that records the stat, 0 before its first record
+    // guarded by this
+    private Histogram[] previous = new Histogram[STATS]; // live as of the last sample
+    private Histogram[] copies = new Histogram[STATS];
+    private final Histogram[] interval = new Histogram[STATS]; // records between the last two samples
+    private long lastSample = System.nanoTime();
+    private double seconds; // length of the interval
+    private long lastAllocated = -1;
+    private double allocatedPerSecond;
+
+    public Metrics() {
+        for (int stat = 0; stat < STATS; stat++) {
+            live[stat] = new Histogram();
+            previous[stat] = new Histogram();
+            copies[stat] = new Histogram();
+            interval[stat] = new Histogram();
+        }
+    }
+
+    // only from the one thread that records this stat
+    public void record(Stat stat, long nanos) {
+        int index = stat.ordinal();
+        if (writers[index] == 0) writers[index] = Thread.currentThread().getId();
+
+        live[index].record(nanos);
+        if (IS_JFR_AVAILABLE) MetricEvent.commit(stat, nanos);
+    }
+
+    // starts a new interval when the current one is long enough
+    public synchronized void sample() {
+        long now = System.nanoTime();
+        if (now - lastSample < SAMPLE_NANOS) return;
+
+        for (int stat = 0; stat < STATS; stat++) {
+            copies[stat].copyFrom(live[stat]);
+            interval[stat].setDifference(copies[stat], previous[stat]);
+        }
+
+        Histogram[] swap = previous;
+        previous = copies;
+        copies = swap;
+
+        seconds = (now - lastSample) / 1e9;
+        lastSample = now;
+
+        long allocated = allocatedBytes();
+        allocatedPerSecond = lastAllocated < 0 || allocated < 0 ? 0 : (allocated - lastAllocated) / seconds;
+        lastAllocated = allocated;
+    }
+
+    // the stat's value at a percentile of the last interval, in microseconds
+    public synchronized double getPercentile(Stat stat, double percentile) {
+        return interval[stat.ordinal()].getValueAtPercentile(percentile) / 1e3;
+    }
+
+    public synchronized Summary getSummary(Stat stat) {
+        Histogram histogram = interval[stat.ordinal()];
+        return new Summary(histogram.getCount(), histogram.getMean() / 1e3, histogram.getValueAtPercentile(50) / 1e3,
+                histogram.getValueAtPercentile(99) / 1e3, histogram.getMax() / 1e3);
+    }
+
+    // records of the stat per second over the last interval
+    public synchronized double getRate(Stat stat) {
+        return seconds == 0 ? 0 : interval[stat.ordinal()].getCount() / seconds;
+    }
+
+    // publishes this as an MBean named SwingTetris:type=Metrics,name=<name>
+    public void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("SwingTetris:type=Metrics,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the metrics MBean", e);
+        }
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        sample();
+        return getRate(Stat.PAINT);
+    }
+
+    @Override
+    public double getTicksPerSecond() {
+        sample();
+        return getRate(Stat.TICK);
+    }
+
+    // bytes allocated per second by the threads that record stats, i.e. the game loop and the EDT
+    @Override
+    public synchronized double getAllocatedBytesPerSecond() {
+        sample();
+        return allocatedPerSecond;
+    }
+
+    @Override
+    public Summary getTick() {
+        sample();
+        return getSummary(Stat.TICK);
+    }
+
+    @Override
+    public Summary getKeyPressed() {
+        sample();
+        return getSummary(Stat.KEY_PRESSED);
+    }
+
+    @Override
+    public Summary getCollision() {
+        sample();
+        return getSummary(Stat.COLLISION);
+    }
+
+    @Override
+    public Summary getClearLines() {
+        sample();
+        return getSummary(Stat.CLEAR_LINES);
+    }
+
+    @Override
+    public Summary getPaint() {
+        sample();
+        return getSummary(Stat.PAINT);
+    }
+
+    @Override
+    public Summary getTickJitter() {
+        sample();
+        return getSummary(Stat.TICK_JITTER);
+    }
+
+    @Override
+    public Summary getInputLatency() {
+        sample();
+        return getSummary(Stat.INPUT_LATENCY);
+    }
+
+    // total bytes allocated by the writer threads so far, -1 if the JVM cannot tell
+    private long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) return -1;
+
+        long total = 0;
+        for (int stat = 0; stat < STATS; stat++) {
+            long writer = writers[stat];
+            if (writer == 0 || isCounted(writer, stat)) continue;
+
+            long bytes = allocations.getThreadAllocatedBytes(writer);
+            if (bytes > 0) total += bytes; // -1 once the thread has ended
+        }
+        return total;
+    }
+
+    // true if a stat before this one has the same writer
+    private boolean isCounted(long writer, int stat) {
+        for (int before = 0; before < stat; before++) {
+            if (writers[before] == writer) return true;
+        }
+        return false;
+    }
+
+    private static boolean isAvailable(String className) {
+        try {
+            Class.forName(className, false, Metrics.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Metrics of a running game for JMX clients, e.g. jconsole or a Prometheus JMX exporter.
+ * Rates and summaries cover the last sample interval of Metrics, not the whole game.
+ */
+public interface MetricsMXBean {
+    double getFramesPerSecond();
+
+    double getTicksPerSecond();
+
+    double getAllocatedBytesPerSecond();
+
+    Metrics.Summary getTick();
+
+    Metrics.Summary getKeyPressed();
+
+    Metrics.Summary getCollision();
+
+    Metrics.Summary getClearLines();
+
+    Metrics.Summary getPaint();
+
+    Metrics.Summary getTickJitter();
+
+    Metrics.Summary getInputLatency();
+}
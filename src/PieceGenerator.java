@@ -0,0 +1,13 @@
+// source of the tetromino sequence of one game, see Randomizer for the available implementations
+public interface PieceGenerator {
+    // index of the next tetromino, see Tetromino.NAMES
+    int next();
+
+    // the generator it draws from, its state is part of the game's
+    SplitRandom getRandom();
+
+    // whatever else decides the next tetrominos as a word, 0 if nothing; see GameEngine.save()
+    int getState();
+
+    void setState(int state);
+}
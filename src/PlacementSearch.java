@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/**
+ * Finds the best final placement of the active tetromino: every rotation the piece can turn into
+ * where it is, every column it can then slide to, dropped straight down (a hard drop, found with
+ * the board's skyline). Each placement is made on a scratch board, scored and taken back again,
+ * so nothing is copied per placement.
+ *
+ * The score is a weighted sum of the board after the lock:
+ *
+ *      aggregate height   sum of the column heights
+ *      lines cleared      full rows, they are left out of the other features
+ *      holes              empty tiles with a filled tile somewhere above
+ *      bumpiness          sum of the height differences of neighbour columns
+ *
+ * With a TranspositionCache, a board that was scored before (e.g. the same lock reached through
+ * another rotation) is looked up by its Zobrist key instead of being scored again.
+ */
+public class PlacementSearch {
+    private static final double HEIGHT_WEIGHT = -0.510066;
+    private static final double LINES_WEIGHT = 0.760666;
+    private static final double HOLES_WEIGHT = -0.35663;
+    private static final double BUMPINESS_WEIGHT = -0.184483;
+    private static final byte PLACED = 1; // any filled color, the scratch board is never drawn
+
+    private final TranspositionCache cache; // may be null
+    private final BitBoard scratch; // copy of the engine's stack that placements are tried on
+    private final int[] heights;
+    private final long[] seen; // columns that have a filled tile in the rows scanned so far
+    private long evaluations = 0;
+    private int bestRotation;
+    private int bestX;
+    private double bestScore;
+
+    public PlacementSearch(int width, int height) {
+        this(width, height, null);
+    }
+
+    public PlacementSearch(int width, int height, TranspositionCache cache) {
+        this.cache = cache;
+        scratch = new BitBoard(width, height);
+        heights = new int[width];
+        seen = new long[scratch.getWordsPerRow()];
+    }
+
+    // searches the placements of the engine's active tetromino, see getBestRotation() / getBestX()
+    public boolean search(GameEngine engine) {
+        int tetromino = engine.getTetromino();
+        int rotation = engine.getRotation();
+        int x = engine.getX();
+        int y = engine.getY();
+
+        scratch.copyFrom(engine.getBoard()); // the locked stack, the active tetromino is not on it
+
+        return search(scratch, tetromino, rotation, x, y);
+    }
+
+    // searches on a board that does not contain the tetromino, the board is left as it was
+    public boolean search(BitBoard board, int tetromino, int rotation, int x, int y) {
+        bestScore = Double.NEGATIVE_INFINITY;
+        boolean found = false;
+
+        // turn the tetromino one rotation further each time, as the ROTATE input would
+        for (int turns = 0; turns < Tetromino.ROTATIONS; turns++) {
+            if (board.collides(tetromino, rotation, x, y)) break;
+
+            // columns it can slide to, both ways until it hits something
+            int left = x, right = x;
+            while (!board.collides(tetromino, rotation, left - 1, y)) left--;
+            while (!board.collides(tetromino, rotation, right + 1, y)) right++;
+
+            for (int column = left; column <= right; column++) {
+                int landing = y + board.dropDistance(tetromino, rotation, column, y);
+
+                double score = evaluate(board, tetromino, rotation, column, landing);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestRotation = rotation;
+                    bestX = column;
+                    found = true;
+                }
+            }
+
+            rotation = (rotation + 1) % Tetromino.ROTATIONS;
+        }
+
+        return found;
+    }
+
+    // score of the board after locking the tetromino at (x, y), the board is left as it was
+    public double evaluate(BitBoard board, int tetromino, int rotation, int x, int y) {
+        evaluations++;
+
+        int shape = Tetromino.shape(tetromino, rotation);
+        for (int tile = 0; tile < Tetromino.TILES; tile++) {
+            if (y + Tetromino.cellY(shape, tile) < 0) return Double.NEGATIVE_INFINITY; // would lock above the board
+        }
+
+        board.fill(tetromino, rotation, x, y, PLACED);
+
+        double score;
+        if (cache == null) {
+            score = evaluate(board);
+        } else {
+            long key = TranspositionCache.key(board);
+            score = cache.get(key);
+
+            if (Double.isNaN(score)) {
+                score = evaluate(board);
+                cache.put(key, score);
+            }
+        }
+
+        board.fill(tetromino, rotation, x, y, BitBoard.EMPTY);
+
+        return score;
+    }
+
+    private double evaluate(BitBoard board) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        int words = board.getWordsPerRow();
+
+        // rows above the top of the stack are empty, they change none of the features
+        int top = board.getTopRow();
+
+        int lines = 0;
+        for (int row = top; row < height; row++) {
+            if (board.isRowFull(row)) lines++;
+        }
+
+        // top down: a column's height is the number of rows left below its first filled tile
+        Arrays.fill(seen, 0L);
+        Arrays.fill(heights, 0);
+        int remaining = height - lines - top;
+        int holes = 0;
+
+        for (int row = top; row < height; row++) {
+            if (board.isRowFull(row)) continue; // cleared on lock
+
+            for (int word = 0; word < words; word++) {
+                long bits = board.getRowWord(row, word);
+                holes += Long.bitCount(seen[word] & ~bits);
+
+                for (long fresh = bits & ~seen[word]; fresh != 0; fresh &= fresh - 1) {
+                    heights[word * 64 + Long.numberOfTrailingZeros(fresh)] = remaining;
+                }
+
+                seen[word] |= bits;
+            }
+
+            remaining--;
+        }
+
+        int aggregateHeight = heights[0];
+        int bumpiness = 0;
+        for (int col = 1; col < width; col++) {
+            aggregateHeight += heights[col];
+            bumpiness += Math.abs(heights[col] - heights[col - 1]);
+        }
+
+        return HEIGHT_WEIGHT * aggregateHeight + LINES_WEIGHT * lines + HOLES_WEIGHT * holes + BUMPINESS_WEIGHT * bumpiness;
+    }
+
+    public int getBestRotation() {
+        return bestRotation;
+    }
+
+    public int getBestX() {
+        return bestX;
+    }
+
+    public double getBestScore() {
+        return bestScore;
+    }
+
+    public TranspositionCache getCache() {
+        return cache;
+    }
+
+    // placements scored so far, cache hits included
+    public long getEvaluations() {
+        return evaluations;
+    }
+}
@@ -0,0 +1,5 @@
+// decides the inputs of a simulated game, see SimulationRunner
+public interface Policy {
+    // next input to apply before the engine's next tick; asked again until it returns null
+    Input next(GameEngine engine);
+}
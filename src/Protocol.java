@@ -0,0 +1,77 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Binary protocol of GameServer and GameClient over TCP. Every message is a frame, big-endian:
+ *
+ *      int length      bytes after this field
+ *      byte type       one of the message types below
+ *      ...             the message
+ *
+ * client -> server
+ *      INPUT           byte input (Input.ordinal()), applied before the server's next tick
+ *
+ * server -> client
+ *      START           byte you, byte players, short width, short height
+ *      TICK            long tick, byte boards, then per board that changed:
+ *                          byte player, byte state (GameState.ordinal()),
+ *                          byte tetromino, byte rotation, short x, short y, short ghostY, byte color,
+ *                          int lines, int pieces,
+ *                          int cells, then per changed cell: short x, short y, byte color
+ *      GARBAGE         byte from, byte to, byte lines
+ *      OVER            byte winner, NO_PLAYER if nobody won
+ *
+ * A TICK carries only the boards and cells that changed since the last one, so a client keeps
+ * a copy of every board and applies the changes to it. The active tetromino is not a cell, it
+ * is the pose.
+ */
+public class Protocol {
+    public static final int HEADER_BYTES = 5; // length + type
+    public static final int MAX_FRAME_BYTES = 1 << 24; // larger lengths are a broken stream
+
+    public static final byte INPUT = 1;
+    public static final byte START = 2;
+    public static final byte TICK = 3;
+    public static final byte GARBAGE = 4;
+    public static final byte OVER = 5;
+
+    public static final int BOARD_BYTES = 23; // a TICK's board without its cells
+    public static final int CELL_BYTES = 5;
+    public static final int NO_PLAYER = 0xFF;
+
+    private Protocol() {
+    }
+
+    // starts a frame, returns its start for end()
+    public static int begin(ByteBuffer out, byte type) {
+        int start = out.position();
+        out.putInt(0);
+        out.put(type);
+        return start;
+    }
+
+    // writes the length of the frame started at start
+    public static void end(ByteBuffer out, int start) {
+        out.putInt(start, out.position() - start - 4);
+    }
+
+    /**
+     * Type of the next complete frame in a buffer being read, its position then at the message;
+     * 0 if the frame has not fully arrived, the position is left as it was. The caller reads the
+     * message and sets the position to frameEnd().
+     */
+    public static byte next(ByteBuffer in) {
+        if (in.remaining() < HEADER_BYTES) return 0;
+
+        int length = in.getInt(in.position());
+        if (length < 1 || length > MAX_FRAME_BYTES) throw new IllegalStateException("Bad frame length " + length);
+        if (in.remaining() < 4 + length) return 0;
+
+        in.position(in.position() + HEADER_BYTES);
+        return in.get(in.position() - 1);
+    }
+
+    // position after the frame whose message starts at messageStart
+    public static int frameEnd(ByteBuffer in, int messageStart) {
+        return messageStart - HEADER_BYTES + 4 + in.getInt(messageStart - HEADER_BYTES);
+    }
+}
@@ -0,0 +1,22 @@
+import java.util.SplittableRandom;
+
+// scripted player: presses a random key before roughly half of the gravity steps
+public class RandomPolicy implements Policy {
+    private static final Input[] INPUTS = {Input.LEFT, Input.RIGHT, Input.DOWN, Input.ROTATE}; // no hard drop, games would end in a few steps
+
+    private final SplittableRandom random;
+    private long lastTick = -1; // the tick it last pressed a key for
+
+    public RandomPolicy(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public Input next(GameEngine engine) {
+        if (engine.getTicks() == lastTick) return null; // one key per tick
+        lastTick = engine.getTicks();
+
+        int index = random.nextInt(INPUTS.length * 2);
+        return index < INPUTS.length ? INPUTS[index] : null;
+    }
+}
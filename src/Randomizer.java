@@ -0,0 +1,17 @@
+// PieceGenerator implementations a game can be created with
+public enum Randomizer {
+    UNIFORM {
+        @Override
+        public PieceGenerator create(SplitRandom random) {
+            return new UniformGenerator(random);
+        }
+    },
+    BAG {
+        @Override
+        public PieceGenerator create(SplitRandom random) {
+            return new BagGenerator(random);
+        }
+    };
+
+    public abstract PieceGenerator create(SplitRandom random);
+}
@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A recorded game. The engine is deterministic, so the seed and the inputs with the tick
+ * they were applied at are all it takes to play the game again:
+ *
+ *      int     MAGIC
+ *      byte    VERSION
+ *      byte    randomizer ordinal
+ *      int     width, height, ticks per row
+ *      long    seed
+ *      int     start level                                 - version 2 on
+ *      byte    gravity curve (1 or 0), see GameEngine.setGravityCurve()
+ *      varint  (ticks since the previous event << CODE_BITS | code) ...   code: Input ordinal or END
+ *
+ * Playback either runs a GameLoop with policy() for real-time viewing, or fastForward() plays
+ * the whole game headless:
+ *
+ *      java Replay <file>...      fast-forwards every file and prints how each game ended
+ */
+public class Replay {
+    public static final int MAGIC = 0x54524550; // "TREP"
+    public static final byte VERSION = 2;
+    public static final int CODE_BITS = 3;
+    public static final int END = (1 << CODE_BITS) - 1;
+    public static final int MAX_EVENT_SIZE = 10; // bytes of a 64-bit varint
+
+    private final Randomizer randomizer;
+    private final int width;
+    private final int height;
+    private final int ticksPerRow;
+    private final long seed;
+    private final int startLevel;
+    private final boolean isGravityCurve;
+    private final ByteBuffer events;
+
+    private Replay(ByteBuffer data) {
+        if (data.getInt() != MAGIC) throw new IllegalArgumentException("Not a replay");
+        byte version = data.get();
+        if (version != 1 && version != VERSION) throw new IllegalArgumentException("Unsupported replay version");
+
+        randomizer = Randomizer.values()[data.get()];
+        width = data.getInt();
+        height = data.getInt();
+        ticksPerRow = data.getInt();
+        seed = data.getLong();
+        startLevel = version == 1 ? 1 : data.getInt(); // version 1 has fixed gravity only
+        isGravityCurve = version != 1 && data.get() != 0;
+        events = data.slice();
+    }
+
+    public static Replay read(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+            while (data.hasRemaining()) {
+                if (channel.read(data) < 0) break;
+            }
+            data.flip();
+            return new Replay(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the engine the recorded game started with
+    public GameEngine newEngine() {
+        GameEngine engine = new GameEngine(width, height, seed, randomizer);
+        engine.setTicksPerRow(ticksPerRow);
+        engine.setStartLevel(startLevel);
+        engine.setGravityCurve(isGravityCurve);
+        return engine;
+    }
+
+    // feeds the recorded inputs to a fresh engine from newEngine() tick by tick, and again after the engine was rewound
+    public Policy policy() {
+        return new Player(events.duplicate());
+    }
+
+    // plays the whole game headless, returns the engine as the recording ended
+    public GameEngine fastForward() {
+        GameEngine engine = newEngine();
+        Player player = new Player(events.duplicate());
+
+        while (!engine.isOver() && !player.isFinished(engine)) {
+            Input input;
+            while ((input = player.next(engine)) != null) engine.apply(input);
+            engine.tick();
+        }
+
+        return engine;
+    }
+
+    private static class Player implements Policy {
+        private static final Input[] INPUTS = Input.values();
+
+        private final ByteBuffer events;
+        private final int start;
+        private long nextTick = 0;
+        private int nextCode;
+        private long lastTick = 0; // of the engine when last asked
+
+        Player(ByteBuffer events) {
+            this.events = events;
+            start = events.position();
+            readEvent();
+        }
+
+        @Override
+        public Input next(GameEngine engine) {
+            if (engine.getTicks() < lastTick) seek(engine.getTicks()); // rewound, see GameEngine.rewind()
+            lastTick = engine.getTicks();
+            if (nextCode == END || engine.getTicks() != nextTick) return null;
+
+            Input input = INPUTS[nextCode];
+            readEvent();
+            return input;
+        }
+
+        // the engine reached the tick the recording ended at
+        boolean isFinished(GameEngine engine) {
+            return nextCode == END && engine.getTicks() >= nextTick;
+        }
+
+        // reads from the start again up to the first input of the tick
+        private void seek(long tick) {
+            events.position(start);
+            nextTick = 0;
+            readEvent();
+            while (nextCode != END && nextTick < tick) readEvent();
+        }
+
+        private void readEvent() {
+            if (!events.hasRemaining()) { // cut off, e.g. the game crashed before close()
+                nextCode = END;
+                return;
+            }
+
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = events.get();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            nextTick += value >>> CODE_BITS;
+            nextCode = (int) (value & END);
+        }
+    }
+
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+
+        for (String file : args) {
+            GameEngine engine = read(Paths.get(file)).fastForward();
+            System.out.printf("%s: %s after %d ticks, %d pieces, %d lines%n", file, engine.getState(), engine.getTicks(), engine.getPiecesPlaced(), engine.getLinesCleared());
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("%d replays in %d ms%n", args.length, millis);
+    }
+}
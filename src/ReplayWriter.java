@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records a game as a replay file, see Replay for the format. The header is written right away;
+ * inputs are varint encoded into a direct buffer that goes to the FileChannel when it is full,
+ * at least every FLUSH_TICKS ticks (see tick()) and on close(). A replay cut off by a crash
+ * keeps every input up to the last flush, Replay plays it up to its last input.
+ */
+public class ReplayWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FLUSH_TICKS = 60; // a second of the game loop
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long lastTick = 0;
+    private long flushedTick = 0;
+    private boolean isClosed = false;
+
+    // starts the replay of a game that has not ticked yet
+    public ReplayWriter(Path path, GameEngine engine) {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        buffer.putInt(Replay.MAGIC);
+        buffer.put(Replay.VERSION);
+        buffer.put((byte) engine.getRandomizer().ordinal());
+        buffer.putInt(engine.getWidth());
+        buffer.putInt(engine.getHeight());
+        buffer.putInt(engine.getTicksPerRow());
+        buffer.putLong(engine.getSeed());
+        buffer.putInt(engine.getStartLevel());
+        buffer.put((byte) (engine.isGravityCurve() ? 1 : 0));
+        flush();
+    }
+
+    // the engine reached tick number `tick`: writes the buffered inputs out if the last flush is FLUSH_TICKS ago
+    public void tick(long tick) {
+        if (isClosed || tick - flushedTick < FLUSH_TICKS) return;
+
+        flushedTick = tick;
+        if (buffer.position() > 0) flush();
+    }
+
+    // an input applied before the engine's tick number `tick`
+    public void input(long tick, Input input) {
+        write(tick, input.ordinal());
+    }
+
+    // ends the replay at the engine's tick number `tick`
+    public void close(long tick) {
+        if (isClosed) return;
+
+        write(tick, Replay.END);
+        close();
+    }
+
+    @Override
+    public void close() {
+        if (isClosed) return;
+        isClosed = true;
+
+        try {
+            flush();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(long tick, int code) {
+        if (buffer.remaining() < Replay.MAX_EVENT_SIZE) flush();
+
+        long value = (tick - lastTick) << Replay.CODE_BITS | code;
+        lastTick = tick;
+
+        // unsigned LEB128: 7 bits per byte, high bit set on all but the last byte
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void flush() {
+        buffer.flip();
+
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        buffer.clear();
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Undo log of a GameEngine, see GameEngine.setRewindBuffer() and rewind(): a frame per tick
+ * holding only what the tick changed, in a ring of ints of fixed size. When the ring is full
+ * the oldest frames are dropped, so it keeps the last ticks of a game of any length.
+ *
+ *      frame       int length, events..., words..., int length
+ *      event       payload..., int tag         - tag = type | payload words << 8
+ *
+ * The buffer only stores words; what they mean is up to the engine. The length at both ends
+ * of a frame lets the oldest frame be dropped from the front and the newest be read and
+ * dropped from the back. Positions count every word ever written, get() wraps them into the ring.
+ */
+public class RewindBuffer {
+    private final int[] words;
+    private long head = 0; // position of the next word
+    private long oldest = 0; // start of the oldest complete frame
+    private long frameStart = 0; // start of the frame being written
+    private int frames = 0; // complete frames in the ring
+    private boolean isFrameLost = false; // the frame being written did not fit the ring
+
+    public RewindBuffer(int capacity) {
+        if (capacity < 16) throw new IllegalArgumentException("A rewind buffer needs at least 16 words, not " + capacity);
+
+        words = new int[capacity];
+        clear();
+    }
+
+    public int getCapacity() {
+        return words.length;
+    }
+
+    // complete frames that can be undone
+    public int getFrames() {
+        return frames;
+    }
+
+    public long getHead() {
+        return head;
+    }
+
+    // a word of the ring, position between the oldest frame's start and getHead()
+    public int get(long position) {
+        return words[(int) (position % words.length)];
+    }
+
+    // appends a word to the frame being written, dropping the oldest frames to make room
+    public void put(int word) {
+        if (isFrameLost) return;
+
+        if (head - frameStart >= words.length) { // larger than the whole ring, it cannot be undone
+            isFrameLost = true;
+            return;
+        }
+
+        while (head - oldest >= words.length) {
+            oldest += get(oldest);
+            frames--;
+        }
+
+        words[(int) (head % words.length)] = word;
+        head++;
+    }
+
+    // completes the frame being written and starts the next one; a lost frame takes every older one with it
+    public void endFrame() {
+        put(0);
+        if (isFrameLost) {
+            isFrameLost = false;
+            oldest = head;
+            frames = 0;
+        } else {
+            int length = (int) (head - frameStart);
+            words[(int) ((head - 1) % words.length)] = length;
+            words[(int) (frameStart % words.length)] = length;
+            frames++;
+        }
+
+        frameStart = head;
+        put(0); // the length, written by the next endFrame()
+    }
+
+    // removes the newest complete frame; call between endFrame() and the next put()
+    public void dropNewest() {
+        if (frames == 0 || head - frameStart != 1) throw new IllegalStateException("No complete frame to drop");
+
+        head = frameStart - get(frameStart - 1);
+        frames--;
+        frameStart = head;
+        put(0);
+    }
+
+    public void clear() {
+        head = oldest = frameStart = 0;
+        frames = 0;
+        isFrameLost = false;
+        put(0);
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Persistent per-game statistics: a memory-mapped file of fixed-size records, appended only.
+ *
+ *      header (HEADER_SIZE bytes)
+ *          int     MAGIC, VERSION, RECORD_SIZE
+ *          2 x     long count, long check         - committed record count, written alternately
+ *      record i at HEADER_SIZE + i * RECORD_SIZE
+ *          long    timestamp (epoch millis), score, lines, pieces, duration (millis)   - score: GameEngine.getScore()
+ *          int     tetromino counts [Tetromino.COUNT]
+ *          int     input counts [INPUT_SLOTS]      - inputs that changed the game, see GameEngine.getInputCount()
+ *
+ * A record is written before the count that commits it, and the count goes to the older of two
+ * header slots together with a check value. A crash mid-append leaves an uncommitted record,
+ * a crash mid-header a slot with a bad check; either way open() finds the last committed count.
+ *
+ * open() keeps the best scores in an in-memory top-N index, reading only the score field of each
+ * record straight from the mapping, so millions of games load without parsing. The file is one
+ * mapping, and a mapping addresses at most 2 GB: a store holds up to MAX_RECORDS games.
+ */
+public class ScoreStore implements AutoCloseable {
+    public static final int MAGIC = 0x54534353; // "TSCS"
+    public static final int VERSION = 1;
+    public static final int INPUT_SLOTS = 8; // room for more Input types without a new version
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 128;
+    public static final int MAX_RECORDS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE; // about 16.7 million
+
+    private static final int SLOTS_OFFSET = 16;
+    private static final long CHECK_SALT = 0x5DEECE66DL;
+    private static final int GROW_RECORDS = 8192; // the file grows this many records at a time
+
+    private static final int TIMESTAMP = 0, SCORE = 8, LINES = 16, PIECES = 24, DURATION = 32;
+    private static final int TETROMINO_COUNTS = 40;
+    private static final int INPUT_COUNTS = TETROMINO_COUNTS + 4 * Tetromino.COUNT;
+
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private long count; // committed records
+    private long generation; // header slot writes so far, picks the slot of the next one
+    private final long[] top; // record indexes, best score first
+    private int topSize = 0;
+
+    private ScoreStore(FileChannel channel, int topN) throws IOException {
+        this.channel = channel;
+        top = new long[topN];
+
+        if (channel.size() == 0) {
+            map(HEADER_SIZE + (long) GROW_RECORDS * RECORD_SIZE);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, RECORD_SIZE);
+            writeCount(0);
+        } else {
+            map(channel.size());
+            if (map.getInt(0) != MAGIC) throw new IOException("Not a score store");
+            if (map.getInt(4) != VERSION || map.getInt(8) != RECORD_SIZE) throw new IOException("Unsupported score store version");
+            readCount();
+            if (count > MAX_RECORDS || HEADER_SIZE + count * RECORD_SIZE > map.capacity())
+                throw new IOException("Corrupt score store header: " + count + " records in " + map.capacity() + " bytes");
+        }
+
+        for (long index = 0; index < count; index++) index(index);
+    }
+
+    public static ScoreStore open(Path path, int topN) {
+        if (topN < 1) throw new IllegalArgumentException("The leaderboard needs at least one entry, not " + topN);
+
+        try {
+            if (path.getParent() != null) Files.createDirectories(path.getParent());
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                return new ScoreStore(channel, topN);
+            } catch (IOException | RuntimeException e) { // not a store, or a corrupt one: the channel is not handed out
+                try {
+                    channel.close();
+                } catch (IOException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // stores a finished game, returns its record index
+    public long append(GameEngine engine, long score, long durationMillis, long timestamp) {
+        if (count == MAX_RECORDS) throw new IllegalStateException("The score store is full, it holds " + MAX_RECORDS + " games");
+
+        try {
+            long needed = HEADER_SIZE + (count + 1) * RECORD_SIZE;
+            if (needed > map.capacity()) map(Math.min(needed + (long) GROW_RECORDS * RECORD_SIZE, HEADER_SIZE + (long) MAX_RECORDS * RECORD_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int offset = offset(count);
+        map.putLong(offset + TIMESTAMP, timestamp);
+        map.putLong(offset + SCORE, score);
+        map.putLong(offset + LINES, engine.getLinesCleared());
+        map.putLong(offset + PIECES, engine.getPiecesPlaced());
+        map.putLong(offset + DURATION, durationMillis);
+
+        for (int tetromino = 0; tetromino < Tetromino.COUNT; tetromino++)
+            map.putInt(offset + TETROMINO_COUNTS + 4 * tetromino, engine.getTetrominoCount(tetromino));
+
+        for (Input input : Input.values())
+            map.putInt(offset + INPUT_COUNTS + 4 * input.ordinal(), engine.getInputCount(input));
+
+        map.force(); // the record is on disk before the count that commits it
+        writeCount(count + 1);
+        map.force();
+
+        index(count - 1);
+        return count - 1;
+    }
+
+    public long size() {
+        return count;
+    }
+
+    // entries of the leaderboard, at most the topN given to open()
+    public int getTopSize() {
+        return topSize;
+    }
+
+    // record index of the rank-th best score, rank 0 is the best
+    public long getTop(int rank) {
+        return top[rank];
+    }
+
+    public long getTimestamp(long index) {
+        return map.getLong(offset(index) + TIMESTAMP);
+    }
+
+    public long getScore(long index) {
+        return map.getLong(offset(index) + SCORE);
+    }
+
+    public long getLines(long index) {
+        return map.getLong(offset(index) + LINES);
+    }
+
+    public long getPieces(long index) {
+        return map.getLong(offset(index) + PIECES);
+    }
+
+    public long getDuration(long index) {
+        return map.getLong(offset(index) + DURATION);
+    }
+
+    public int getTetrominoCount(long index, int tetromino) {
+        return map.getInt(offset(index) + TETROMINO_COUNTS + 4 * tetromino);
+    }
+
+    public int getInputCount(long index, Input input) {
+        return map.getInt(offset(index) + INPUT_COUNTS + 4 * input.ordinal());
+    }
+
+    @Override
+    public void close() {
+        try {
+            map.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // adds a record to the top-N index if its score is good enough, ties keep the older record first
+    private void index(long index) {
+        long score = getScore(index);
+        if (topSize == top.length && score <= getScore(top[topSize - 1])) return;
+
+        int rank = Math.min(topSize, top.length - 1);
+        while (rank > 0 && getScore(top[rank - 1]) < score) {
+            top[rank] = top[rank - 1];
+            rank--;
+        }
+
+        top[rank] = index;
+        if (topSize < top.length) topSize++;
+    }
+
+    private void map(long size) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size); // grows the file to size
+    }
+
+    // fits an int, as index < MAX_RECORDS
+    private int offset(long index) {
+        return (int) (HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    private void writeCount(long newCount) {
+        int slot = SLOTS_OFFSET + (int) (generation & 1) * 16;
+        map.putLong(slot, newCount);
+        map.putLong(slot + 8, check(newCount, generation));
+        generation++;
+        count = newCount;
+    }
+
+    // the slot with the highest valid count wins, a torn slot fails its check
+    private void readCount() throws IOException {
+        count = -1;
+
+        for (int i = 0; i < 2; i++) {
+            int slot = SLOTS_OFFSET + i * 16;
+            long slotCount = map.getLong(slot);
+
+            // the generation of a slot is not stored, but it is even for slot 0 and odd for slot 1
+            if (slotCount > count && isValid(slotCount, map.getLong(slot + 8), i)) {
+                count = slotCount;
+                generation = i + 1;
+            }
+        }
+
+        if (count < 0) throw new IOException("Corrupt score store header");
+    }
+
+    private static long check(long count, long generation) {
+        return (count * CHECK_SALT) ^ (generation & 1) ^ MAGIC;
+    }
+
+    private static boolean isValid(long count, long check, int slot) {
+        return count >= 0 && check == check(count, slot);
+    }
+}
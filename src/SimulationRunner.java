@@ -0,0 +1,128 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Plays many headless games in parallel on a fork/join pool, e.g. to evaluate a Policy:
+ *
+ *      java SimulationRunner [games] [seed] [random | bot]
+ *
+ * Every game gets its own engine, policy and seed (the run's seed + the game's index),
+ * so a run gives the same totals no matter how the games are spread over the workers.
+ */
+public class SimulationRunner {
+    private static final int GAMES_PER_TASK = 16; // a task with fewer games plays them instead of splitting
+
+    // totals of a run, updated by all workers without locking
+    public static class Stats {
+        public final LongAdder games = new LongAdder();
+        public final LongAdder won = new LongAdder();
+        public final LongAdder linesCleared = new LongAdder();
+        public final LongAdder piecesPlaced = new LongAdder();
+        public final LongAdder steps = new LongAdder();
+        public final LongAdder topOutHeight = new LongAdder(); // stack height at the end of the game, summed
+        public final LongAccumulator maxTopOutHeight = new LongAccumulator(Math::max, 0);
+
+        @Override
+        public String toString() {
+            long count = Math.max(1, games.sum());
+            return String.format("games %d, won %d, lines %d (%.2f/game), pieces %d (%.2f/game), steps %d (%.2f/game), top-out height %.2f avg / %d max",
+                    games.sum(), won.sum(),
+                    linesCleared.sum(), (double) linesCleared.sum() / count,
+                    piecesPlaced.sum(), (double) piecesPlaced.sum() / count,
+                    steps.sum(), (double) steps.sum() / count,
+                    (double) topOutHeight.sum() / count, maxTopOutHeight.get());
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final Randomizer randomizer;
+    private final LongFunction<Policy> policies; // creates the policy of a game from the game's seed
+    private final long maxSteps; // games still running after that many steps are stopped
+
+    public SimulationRunner(int width, int height, Randomizer randomizer, LongFunction<Policy> policies, long maxSteps) {
+        this.width = width;
+        this.height = height;
+        this.randomizer = randomizer;
+        this.policies = policies;
+        this.maxSteps = maxSteps;
+    }
+
+    public Stats run(int games, long seed) {
+        return run(games, seed, ForkJoinPool.commonPool());
+    }
+
+    public Stats run(int games, long seed, ForkJoinPool pool) {
+        Stats stats = new Stats();
+        pool.invoke(new Games(0, games, seed, stats));
+        return stats;
+    }
+
+    // plays one game to its end and adds it to the stats
+    private void play(long gameSeed, Stats stats) {
+        GameEngine engine = new GameEngine(width, height, gameSeed, randomizer);
+        Policy policy = policies.apply(~gameSeed);
+
+        while (!engine.isOver() && engine.getSteps() < maxSteps) {
+            Input input;
+            while ((input = policy.next(engine)) != null) engine.apply(input);
+            engine.tick(); // a gravity step, ticks per row is 1
+        }
+
+        int stackHeight = engine.getBoard().getStackHeight();
+
+        stats.games.increment();
+        if (engine.getState() == GameState.WON) stats.won.increment();
+        stats.linesCleared.add(engine.getLinesCleared());
+        stats.piecesPlaced.add(engine.getPiecesPlaced());
+        stats.steps.add(engine.getSteps());
+        stats.topOutHeight.add(stackHeight);
+        stats.maxTopOutHeight.accumulate(stackHeight);
+    }
+
+    // games [from, to) of a run, split in halves until small enough
+    @SuppressWarnings("serial") // a ForkJoinTask is Serializable, these are never serialized
+    private class Games extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final long seed;
+        private final Stats stats;
+
+        Games(int from, int to, long seed, Stats stats) {
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+            this.stats = stats;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                for (int game = from; game < to; game++) play(seed + game, stats);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Games(from, middle, seed, stats), new Games(middle, to, seed, stats));
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        boolean bot = args.length > 2 && args[2].equals("bot");
+
+        LongFunction<Policy> policies = bot ? policySeed -> new BotPolicy(10, 20) : RandomPolicy::new;
+        SimulationRunner runner = new SimulationRunner(10, 20, Randomizer.BAG, policies, 1_000_000);
+
+        long start = System.nanoTime();
+        Stats stats = runner.run(games, seed);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println(stats);
+        System.out.printf("%d ms on %d threads, %.0f games/s%n", millis, ForkJoinPool.commonPool().getParallelism(), games * 1000.0 / Math.max(1, millis));
+    }
+}
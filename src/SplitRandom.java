@@ -0,0 +1,85 @@
+/**
+ * java.util.SplittableRandom's SplitMix64 generator with its state in the open, so a game can
+ * save and restore its generators instead of seeding them again and drawing every number so far.
+ * Seeded alike, it draws exactly the numbers SplittableRandom would:
+ *
+ *      seed        += gamma on every draw, the number is a mix of it
+ *      split()     a new generator seeded from a draw, its gamma mixed from the next seed
+ */
+public class SplitRandom {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed;
+    private long gamma; // odd
+
+    public SplitRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    public SplitRandom(long seed, long gamma) {
+        setState(seed, gamma);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getGamma() {
+        return gamma;
+    }
+
+    // continues a generator as getSeed() and getGamma() returned them
+    public void setState(long seed, long gamma) {
+        if ((gamma & 1) == 0) throw new IllegalArgumentException("The gamma of a SplitRandom is odd, not " + gamma);
+
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    public SplitRandom split() {
+        return new SplitRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    public int nextInt() {
+        return mix32(nextSeed());
+    }
+
+    // uniform in [0, bound), rejecting the draws that would favor the low values
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("The bound must be positive, not " + bound);
+
+        int r = nextInt();
+        int m = bound - 1;
+        if ((bound & m) == 0) return r & m; // a power of two
+
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1) ;
+        return r;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L; // odd
+        int n = Long.bitCount(z ^ (z >>> 1)); // enough bit transitions, or the sequence is poorly mixed
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
@@ -1,25 +1,136 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
+/**
+ *      java Tetris                     - play
+ *      java Tetris --record <file>     - play and record the game as a replay
+ *      java Tetris --replay <file>     - watch a recorded game
+ *      java Tetris --resume <file>     - go on with a saved game, o saves to ~/.swingtetris/saved.snapshot
+ *
+ *      --width <tiles> --height <tiles> --tile <pixels>
+ *                                      - board size, also -Dtetris.width / -Dtetris.height / -Dtetris.tile;
+ *                                        a board larger than the screen scrolls, + / - and ctrl + wheel zoom
+ *      --das <ms> --arr <ms>           - key repeat delay and interval, also -Dtetris.das / -Dtetris.arr
+ *      --level <level>                 - start level, also -Dtetris.level; gravity speeds up with the level
+ *      --tournament <boards>           - watch that many bot games at once, also -Dtetris.tournament;
+ *                                        --tile is the largest tile size, the grid shrinks to fit the screen
+ */
 public class Tetris extends JFrame {
-    public Tetris() {
-        init();
+    public Tetris(String[] args) {
+        init(args);
     }
 
-    private void init() {
+    private void init(String[] args) {
         setTitle("Tetris (p to start)");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setResizable(false);
-        Board board = new Board(getContentPane());
-        add(board);
+
+        int width = Integer.getInteger("tetris.width", 10);
+        int height = Integer.getInteger("tetris.height", 20);
+        int tileSize = Integer.getInteger("tetris.tile", 30);
+        long das = Long.getLong("tetris.das", InputHandler.DEFAULT_DAS_MILLIS);
+        long arr = Long.getLong("tetris.arr", InputHandler.DEFAULT_ARR_MILLIS);
+        int tournamentBoards = Integer.getInteger("tetris.tournament", 0);
+        int level = Integer.getInteger("tetris.level", 1);
+        Path replayPath = null;
+        Path recordPath = null;
+        Path resumePath = null;
+
+        for (int arg = 0; arg < args.length; arg += 2) {
+            if (arg + 1 == args.length) throw new IllegalArgumentException("Missing value of " + args[arg]);
+            String value = args[arg + 1];
+
+            switch (args[arg]) {
+                case "--replay": replayPath = Paths.get(value); break;
+                case "--record": recordPath = Paths.get(value); break;
+                case "--resume": resumePath = Paths.get(value); break;
+                case "--width": width = Integer.parseInt(value); break;
+                case "--height": height = Integer.parseInt(value); break;
+                case "--tile": tileSize = Integer.parseInt(value); break;
+                case "--das": das = Long.parseLong(value); break;
+                case "--arr": arr = Long.parseLong(value); break;
+                case "--tournament": tournamentBoards = Integer.parseInt(value); break;
+                case "--level": level = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[arg]);
+            }
+        }
+
+        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        Dimension space = new Dimension(screen.width * 9 / 10, screen.height * 9 / 10);
+
+        if (tournamentBoards > 0) {
+            int columns = Tournament.columnsFor(tournamentBoards, width, height, space);
+            int fittedSize = Math.max(2, Math.min(tileSize, Tournament.tileSizeFor(tournamentBoards, columns, width, height, space)));
+            Tournament tournament = new Tournament(tournamentBoards, columns, width, height, fittedSize, System.nanoTime());
+            tournament.getMetrics().register("tournament");
+            setTitle("Tetris (tournament of " + tournamentBoards + ")");
+            addView(tournament, fittedSize, space);
+            tournament.start();
+            return;
+        }
+
+        Board board;
+        if (replayPath != null) {
+            Replay replay = Replay.read(replayPath);
+            board = new Board(getContentPane(), replay.newEngine(), tileSize); // the replay's board size
+            board.getLoop().setPolicy(replay.policy());
+            board.setScoresPath(null); // the game was stored when it was played
+            board.setWindowTitle("Tetris (replay)");
+            setTitle("Tetris (replay)");
+            board.start();
+        } else {
+            if (resumePath != null && recordPath != null) throw new IllegalArgumentException("A resumed game cannot be recorded, its replay would miss the start");
+
+            GameEngine engine = resumePath != null ? Snapshot.read(resumePath) : Board.newEngine(width, height, level);
+            board = new Board(getContentPane(), engine, tileSize);
+            if (resumePath != null) setTitle("Tetris (p to resume)");
+            board.getLoop().setInputHandler(new InputHandler(das, arr));
+            if (recordPath != null)
+                board.getLoop().record(recordPath);
+            addKeyListener(board); // Add KeyListener to the board, a replay plays without keys
+
+            // keys released while another window has the focus would stay held
+            GameLoop loop = board.getLoop();
+            addWindowFocusListener(new WindowAdapter() {
+                @Override
+                public void windowLostFocus(WindowEvent e) {
+                    loop.releaseAll();
+                }
+            });
+        }
+
+        board.getMetrics().register("board");
+        addView(board, board.getTileSize(), space);
+    }
+
+    // a view larger than the space gets scroll bars, they must not take the keys from the frame
+    private void addView(JComponent view, int tileSize, Dimension space) {
+        Dimension size = view.getPreferredSize();
+        if (size.width > space.width || size.height > space.height) {
+            JScrollPane scrollPane = new JScrollPane(view);
+            scrollPane.setFocusable(false);
+            scrollPane.getHorizontalScrollBar().setFocusable(false);
+            scrollPane.getVerticalScrollBar().setFocusable(false);
+            scrollPane.getVerticalScrollBar().setUnitIncrement(tileSize);
+            scrollPane.getHorizontalScrollBar().setUnitIncrement(tileSize);
+            scrollPane.setPreferredSize(new Dimension(Math.min(size.width, space.width), Math.min(size.height, space.height)));
+            add(scrollPane);
+            setResizable(true);
+        } else {
+            add(view);
+        }
+
         pack();
         setLocationRelativeTo(null); // center frame
-        addKeyListener(board); // Add KeyListener to the board
     }
 
     public static void main(String[] args) {
         EventQueue.invokeLater(() -> {
-            Tetris tetris = new Tetris();
+            Tetris tetris = new Tetris(args);
             tetris.setVisible(true);
         });
     }
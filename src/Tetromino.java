@@ -0,0 +1,165 @@
+/**
+ * Immutable shape table: for every (tetromino, rotation) the offsets of its 4 tiles
+ * relative to the rotation center, in the same order the old fillTetromino painted them.
+ */
+public class Tetromino {
+    public static final int I = 0, J = 1, L = 2, O = 3, S = 4, T = 5, Z = 6;
+    public static final int COUNT = 7;
+    public static final int ROTATIONS = 4;
+    public static final int TILES = 4;
+    public static final String NAMES = "IJLOSTZ";
+
+    // CELL_X[shape(tetromino, rotation) + i], i < TILES; read through cellX() / cellY(), so no caller can change a shape
+    private static final int[] CELL_X;
+    private static final int[] CELL_Y;
+
+    static {
+        final int[][][] shapes = {
+                /* I */ {
+                        {0, 0, -1, 0, 1, 0, 2, 0},
+                        {0, 0, 0, -1, 0, 1, 0, 2},
+                        {0, 0, -1, 0, 1, 0, 2, 0},
+                        {0, 0, 0, -1, 0, 1, 0, 2},
+                },
+                /* J */ {
+                        /**
+                         *      2
+                         *      1 @ 3
+                         */
+                        {0, 0, -1, 0, -1, -1, 1, 0},
+                        /**
+                         *      1 2
+                         *      @
+                         *      3
+                         */
+                        {0, 0, 0, -1, 1, -1, 0, 1},
+                        /**
+                         *      3 @ 1
+                         *          2
+                         */
+                        {0, 0, 1, 0, 1, 1, -1, 0},
+                        /**
+                         *        1
+                         *        @
+                         *      3 2
+                         */
+                        {0, 0, 0, -1, 0, 1, -1, 1},
+                },
+                /* L */ {
+                        /**
+                         *          2
+                         *      1 @ 3
+                         */
+                        {0, 0, -1, 0, 1, -1, 1, 0},
+                        /**
+                         *      1
+                         *      @
+                         *      3 2
+                         */
+                        {0, 0, 0, -1, 1, 1, 0, 1},
+                        /**
+                         *      3 @ 1
+                         *      2
+                         */
+                        {0, 0, 1, 0, -1, 1, -1, 0},
+                        /**
+                         *      2 3
+                         *        @
+                         *        1
+                         */
+                        {0, 0, 0, 1, -1, -1, 0, -1},
+                },
+                /* O */ {
+                        /**
+                         *      2 3
+                         *      @ 1
+                         */
+                        {0, 0, 1, 0, 0, -1, 1, -1},
+                        {0, 0, 1, 0, 0, -1, 1, -1},
+                        {0, 0, 1, 0, 0, -1, 1, -1},
+                        {0, 0, 1, 0, 0, -1, 1, -1},
+                },
+                /* S */ {
+                        /**
+                         *        2 3
+                         *      1 @
+                         */
+                        {0, 0, -1, 0, 0, -1, 1, -1},
+                        /**
+                         *      1
+                         *      @ 2
+                         *        3
+                         */
+                        {0, 0, 0, -1, 1, 0, 1, 1},
+                        {0, 0, -1, 0, 0, -1, 1, -1},
+                        {0, 0, 0, -1, 1, 0, 1, 1},
+                },
+                /* T */ {
+                        /**
+                         *        3
+                         *      1 @ 2
+                         */
+                        {0, 0, -1, 0, 1, 0, 0, -1},
+                        /**
+                         *      1
+                         *      @ 3
+                         *      2
+                         */
+                        {0, 0, 0, -1, 0, 1, 1, 0},
+                        /**
+                         *      2 @ 1
+                         *        3
+                         */
+                        {0, 0, 1, 0, -1, 0, 0, 1},
+                        /**
+                         *        2
+                         *      3 @
+                         *        1
+                         */
+                        {0, 0, 0, 1, 0, -1, -1, 0},
+                },
+                /* Z */ {
+                        /**
+                         *      3 2
+                         *        @ 1
+                         */
+                        {0, 0, 1, 0, 0, -1, -1, -1},
+                        /**
+                         *        3
+                         *      @ 2
+                         *      1
+                         */
+                        {0, 0, 0, 1, 1, 0, 1, -1},
+                        {0, 0, 1, 0, 0, -1, -1, -1},
+                        {0, 0, 0, 1, 1, 0, 1, -1},
+                },
+        };
+
+        CELL_X = new int[COUNT * ROTATIONS * TILES];
+        CELL_Y = new int[COUNT * ROTATIONS * TILES];
+
+        for (int tetromino = 0; tetromino < COUNT; tetromino++) {
+            for (int rotation = 0; rotation < ROTATIONS; rotation++) {
+                for (int tile = 0; tile < TILES; tile++) {
+                    CELL_X[shape(tetromino, rotation) + tile] = shapes[tetromino][rotation][tile * 2];
+                    CELL_Y[shape(tetromino, rotation) + tile] = shapes[tetromino][rotation][tile * 2 + 1];
+                }
+            }
+        }
+    }
+
+    // index of the first tile of a shape in CELL_X / CELL_Y
+    public static int shape(int tetromino, int rotation) {
+        return (tetromino * ROTATIONS + rotation) * TILES;
+    }
+
+    // column offset of tile i < TILES of a shape
+    public static int cellX(int shape, int i) {
+        return CELL_X[shape + i];
+    }
+
+    // row offset of tile i < TILES of a shape
+    public static int cellY(int shape, int i) {
+        return CELL_Y[shape + i];
+    }
+}
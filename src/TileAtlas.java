@@ -0,0 +1,71 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Pre-rendered tiles, one sprite per palette color, packed side by side into one image:
+ *
+ *      +----+----+----+---
+ *      | 0  | 1  | 2  | ...      sprite i starts at x = i * (tileSize + 1)
+ *      +----+----+----+---
+ *
+ * Every sprite is tileSize + 1 pixels wide and high so it carries its own border,
+ * exactly like fillRect + drawRect of the same tile would.
+ */
+public class TileAtlas {
+    private final Color[] palette;
+    private final int tileSize;
+    private final BufferedImage image;
+
+    public TileAtlas(GraphicsConfiguration config, Color[] palette, Color borderColor, int tileSize) {
+        this.palette = palette;
+        this.tileSize = tileSize;
+
+        int spriteSize = tileSize + 1;
+        image = createImage(config, palette.length * spriteSize, spriteSize);
+
+        Graphics2D g = image.createGraphics();
+        for (int color = 0; color < palette.length; color++) {
+            g.setColor(palette[color]);
+            g.fillRect(color * spriteSize, 0, tileSize, tileSize);
+            g.setColor(borderColor);
+            g.drawRect(color * spriteSize, 0, tileSize, tileSize);
+        }
+        g.dispose();
+    }
+
+    // the atlas has to be rebuilt when the tile size or the palette changes
+    public boolean matches(Color[] palette, int tileSize) {
+        return this.palette == palette && this.tileSize == tileSize;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public void drawTile(Graphics g, byte color, int x, int y) {
+        int spriteSize = tileSize + 1;
+        int spriteX = color * spriteSize;
+        g.drawImage(image, x, y, x + spriteSize, y + spriteSize, spriteX, 0, spriteX + spriteSize, spriteSize, null);
+    }
+
+    // a cols x rows grid of empty tiles, drawn once and then blitted under the filled ones
+    public BufferedImage createBackground(GraphicsConfiguration config, int cols, int rows) {
+        BufferedImage background = createImage(config, cols * tileSize + 1, rows * tileSize + 1);
+
+        Graphics2D g = background.createGraphics();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                drawTile(g, BitBoard.EMPTY, col * tileSize, row * tileSize);
+            }
+        }
+        g.dispose();
+
+        return background;
+    }
+
+    // an image in the screen's pixel format so Java2D can keep it in video memory
+    private static BufferedImage createImage(GraphicsConfiguration config, int width, int height) {
+        if (config == null) return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB); // not on screen / headless
+        return config.createCompatibleImage(width, height, Transparency.OPAQUE);
+    }
+}
@@ -0,0 +1,151 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Spectator mode: many bot games side by side in one panel, a grid of seats.
+ *
+ *      +--------+ +--------+ +--------+
+ *      | seat 0 | | seat 1 | | seat 2 |     every seat is its own engine, FrameBuffer and GameLoop,
+ *      +--------+ +--------+ +--------+     seed + index seeds its game
+ *      | seat 3 | | seat 4 | ...
+ *
+ * All the loops tick on one thread and all the seats paint with one BoardPainter, so one tile
+ * atlas. A seat repaints only the tiles its engine changed, so a frame costs the changed tiles
+ * of all boards, not boards x tiles.
+ */
+@SuppressWarnings("serial") // Swing components are Serializable, the tournament and its seats are never serialized
+public class Tournament extends JPanel {
+    public static final int GAP = 4; // pixels between seats
+
+    private final int BOARD_WIDTH;
+    private final int BOARD_HEIGHT;
+    private final int TICK_RATE = 60; // game loop ticks per second, of every seat
+    private final int tileSize;
+    private final BoardPainter painter;
+    private final Metrics metrics = new Metrics(); // shared by all seats: they tick on one thread and paint on another
+    private final ScheduledExecutorService executor; // the one loop thread of all seats
+    private final Seat[] seats;
+    private int finished = 0; // seats whose game is over, loop thread only
+
+    // one seat of the grid, a view of its loop's FrameBuffer
+    private class Seat extends JComponent implements GameLoop.View {
+        final int index;
+        final FrameBuffer frameBuffer;
+        final GameLoop loop;
+        long lines, pieces; // of the finished game, loop thread only
+
+        Seat(int index, GameEngine engine) {
+            this.index = index;
+            frameBuffer = new FrameBuffer(BOARD_WIDTH, BOARD_HEIGHT);
+            loop = new GameLoop(engine, frameBuffer, this, TICK_RATE);
+            loop.setMetrics(metrics);
+            loop.setPolicy(new BotPolicy(BOARD_WIDTH, BOARD_HEIGHT));
+            setPreferredSize(new Dimension(tileSize * BOARD_WIDTH, tileSize * BOARD_HEIGHT));
+            setOpaque(true);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            long start = System.nanoTime();
+            painter.paintBackground(g, this, tileSize);
+
+            synchronized (frameBuffer) {
+                frameBuffer.takeInputNanos(); // bots only, nothing to measure
+                painter.paintTiles(g, frameBuffer, tileSize);
+            }
+
+            metrics.record(Metrics.Stat.PAINT, System.nanoTime() - start);
+        }
+
+        // Swing keeps a dirty region per component, so seats far apart are not merged into one large repaint
+        @Override
+        public void tilesChanged(int minX, int minY, int maxX, int maxY) {
+            int width = (maxX - minX + 1) * tileSize + 1; // + right border
+            int height = (maxY - minY + 1) * tileSize + 1; // + bottom border
+            repaint(minX * tileSize, minY * tileSize, width, height);
+        }
+
+        @Override
+        public void gameOver(GameEngine engine) {
+            lines = engine.getLinesCleared();
+            pieces = engine.getPiecesPlaced();
+            seatFinished();
+        }
+    }
+
+    public Tournament(int boards, int columns, int width, int height, int tileSize, long seed) {
+        BOARD_WIDTH = width;
+        BOARD_HEIGHT = height;
+        this.tileSize = tileSize;
+        painter = new BoardPainter(width, height, Color.WHITE);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tournament-loop");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        setLayout(new GridLayout(0, columns, GAP, GAP));
+        setBorder(BorderFactory.createEmptyBorder(GAP, GAP, GAP, GAP));
+        setBackground(Color.DARK_GRAY);
+
+        seats = new Seat[boards];
+        for (int index = 0; index < boards; index++) {
+            GameEngine engine = new GameEngine(width, height, seed + index, Randomizer.BAG);
+            engine.setTicksPerRow(30); // as Board.newEngine(), the bots hard-drop anyway
+            seats[index] = new Seat(index, engine);
+            add(seats[index]);
+        }
+    }
+
+    // columns of the grid that give the largest tiles in the available space
+    public static int columnsFor(int boards, int width, int height, Dimension space) {
+        int bestColumns = 1;
+        for (int columns = 1; columns <= boards; columns++) {
+            if (tileSizeFor(boards, columns, width, height, space) > tileSizeFor(boards, bestColumns, width, height, space))
+                bestColumns = columns;
+        }
+        return bestColumns;
+    }
+
+    // largest tile size at which the grid fits the space, 0 if none does
+    public static int tileSizeFor(int boards, int columns, int width, int height, Dimension space) {
+        int rows = (boards + columns - 1) / columns;
+        int seatWidth = (space.width - GAP) / columns - GAP;
+        int seatHeight = (space.height - GAP) / rows - GAP;
+        return Math.max(0, Math.min(seatWidth / width, seatHeight / height));
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public void start() {
+        for (Seat seat : seats) seat.loop.start(executor);
+    }
+
+    // runs on the loop thread, the last finished game ends the tournament
+    private void seatFinished() {
+        if (++finished < seats.length) return;
+
+        executor.shutdown();
+        Seat[] standings = seats.clone();
+        Arrays.sort(standings, (a, b) -> a.lines != b.lines ? Long.compare(b.lines, a.lines) : Long.compare(b.pieces, a.pieces));
+
+        StringBuilder text = new StringBuilder("Standings of ").append(seats.length).append(" games:");
+        for (int rank = 0; rank < Math.min(standings.length, 10); rank++) {
+            Seat seat = standings[rank];
+            text.append(String.format("%n%2d. seat %3d  %6d lines  %5d pieces", rank + 1, seat.index, seat.lines, seat.pieces));
+        }
+
+        String message = text.toString();
+        EventQueue.invokeLater(() ->
+                JOptionPane.showMessageDialog(this, message, "Tournament over", JOptionPane.INFORMATION_MESSAGE));
+    }
+}
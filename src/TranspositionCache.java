@@ -0,0 +1,109 @@
+import java.util.Arrays;
+
+/**
+ * Bounded cache of position scores keyed by Zobrist hash, so an evaluator does not score a
+ * position again that it reached through another move sequence. Open addressing over flat
+ * primitive arrays: a key may sit in any of the PROBES slots after its home slot. When they are
+ * all taken, the slots get a CLOCK style second chance: a slot used since the last sweep keeps
+ * its entry and loses its reference bit, the first one that was not used gets evicted.
+ *
+ * Not thread-safe, give every worker its own cache.
+ */
+public class TranspositionCache {
+    private static final int PROBES = 8;
+
+    private final long[] keys;
+    private final double[] values;
+    private final boolean[] isUsed; // any key is a possible hash, so an empty slot is marked here
+    private final boolean[] referenced;
+    private final int mask;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    // capacity is rounded up to a power of two
+    public TranspositionCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity - 1) << 1);
+        keys = new long[size];
+        values = new double[size];
+        isUsed = new boolean[size];
+        referenced = new boolean[size];
+        mask = size - 1;
+    }
+
+    // position key of a board, see Zobrist; a score of the board after a lock does not depend on the tetromino that locked
+    public static long key(BitBoard board) {
+        return board.getHash();
+    }
+
+    // cached value of the key or NaN if there is none
+    public double get(long key) {
+        int home = index(key);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (home + probe) & mask;
+
+            if (!isUsed[slot]) break;
+            if (keys[slot] == key) {
+                referenced[slot] = true;
+                hits++;
+                return values[slot];
+            }
+        }
+
+        misses++;
+        return Double.NaN;
+    }
+
+    public void put(long key, double value) {
+        int home = index(key);
+        int victim = -1;
+
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (home + probe) & mask;
+
+            if (!isUsed[slot] || keys[slot] == key) {
+                store(slot, key, value);
+                return;
+            }
+
+            // second chance: clear the reference bit, the first unreferenced slot is the victim
+            if (victim < 0 && !referenced[slot]) victim = slot;
+            referenced[slot] = false;
+        }
+
+        evictions++;
+        store(victim >= 0 ? victim : home, key, value);
+    }
+
+    public void clear() {
+        Arrays.fill(isUsed, false);
+        Arrays.fill(referenced, false);
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    private void store(int slot, long key, double value) {
+        keys[slot] = key;
+        values[slot] = value;
+        isUsed[slot] = true;
+        referenced[slot] = true;
+    }
+
+    private int index(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,28 @@
+// every tetromino is equally likely on every draw
+public class UniformGenerator implements PieceGenerator {
+    private final SplitRandom random;
+
+    public UniformGenerator(SplitRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public int next() {
+        return random.nextInt(Tetromino.COUNT);
+    }
+
+    @Override
+    public SplitRandom getRandom() {
+        return random;
+    }
+
+    // every draw is on its own
+    @Override
+    public int getState() {
+        return 0;
+    }
+
+    @Override
+    public void setState(int state) {
+    }
+}
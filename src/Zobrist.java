@@ -0,0 +1,19 @@
+/**
+ * Zobrist keys: a fixed random 64-bit key per tile index. The hash of a position is the XOR
+ * of the keys of its filled tiles, so it can be updated tile by tile. Keys are computed from the
+ * index instead of looked up, so boards of any size share them without a table.
+ */
+public class Zobrist {
+    private static final long TILE_SEED = 0x9E3779B97F4A7C15L;
+
+    public static long tile(int index) {
+        return mix((index + 1) * TILE_SEED);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}